@@ -0,0 +1,272 @@
+package com.financeguy;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online backup and restore of the expense database using SQLite's backup API.
+ * A backup copies a few pages per step on a background thread and pauses between steps, so the UI and other
+ * writers are never held up for more than one step. Snapshots can also be taken on a timer, keeping only the newest ones.
+ */
+public class BackupManager {
+
+    //snapshot files are named after the database and the time they were taken, so sorting by name sorts by age and
+    //databases sharing a folder (e.g. test runs next to each other) never list or prune each other's snapshots
+    private static final String SNAPSHOT_SUFFIX = ".db";
+    private static final DateTimeFormatter SNAPSHOT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    //pages copied per backup step and the pause between steps that lets writers in
+    private static final int PAGES_PER_STEP = 256;
+    private static final long PAUSE_BETWEEN_STEPS_MILLIS = 5;
+    //when a step finds the database locked it sleeps and retries, up to this many times
+    private static final int BUSY_SLEEP_MILLIS = 100;
+    private static final int BUSY_RETRIES = 50;
+
+    //one thread for every backup and restore, so they never overlap
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "database-backup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path backupDirectory;
+    private final String snapshotPrefix;
+    private final int snapshotsToKeep;
+
+    public BackupManager(Path backupDirectory, int snapshotsToKeep) {
+        this.backupDirectory = backupDirectory;
+        this.snapshotsToKeep = snapshotsToKeep;
+        //"financeguy.db" gives "financeguy-", the name snapshots always had
+        String databaseName = DatabaseHelper.getDatabasePath().getFileName().toString();
+        if (databaseName.endsWith(SNAPSHOT_SUFFIX)) {
+            databaseName = databaseName.substring(0, databaseName.length() - SNAPSHOT_SUFFIX.length());
+        }
+        this.snapshotPrefix = databaseName + "-";
+    }
+
+    //folder the snapshots are written to
+    public Path getBackupDirectory() {
+        return backupDirectory;
+    }
+
+    //takes a snapshot every period, the first one after initialDelay
+    public void startScheduledSnapshots(long initialDelay, long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(() -> {
+            //an exception would cancel the schedule, so never let one escape
+            try {
+                snapshot();
+            } catch (SQLException | IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, initialDelay, period, unit);
+    }
+
+    //stops the timer, a backup that is already running is allowed to finish
+    public void stop() {
+        executor.shutdown();
+    }
+
+    //takes a snapshot in the background
+    public CompletableFuture<BackupReport> snapshotAsync() {
+        return supplyOnExecutor(this::snapshot);
+    }
+
+    //restores a snapshot in the background
+    public CompletableFuture<BackupReport> restoreAsync(Path snapshot) {
+        return supplyOnExecutor(() -> restore(snapshot));
+    }
+
+    //snapshot files in the backup folder, newest first
+    public List<Path> listSnapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(backupDirectory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(backupDirectory, snapshotPrefix + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path path : stream) {
+                snapshots.add(path);
+            }
+        }
+        snapshots.sort(Comparator.comparing((Path path) -> path.getFileName().toString()).reversed());
+        return snapshots;
+    }
+
+    //copies the live database into a new snapshot file and removes snapshots beyond the retention limit
+    private BackupReport snapshot() throws SQLException, IOException {
+        Files.createDirectories(backupDirectory);
+        //two snapshots in the same millisecond (e.g. Back Up Now right before Clear All Data) must not share a file,
+        //so a taken name moves the time forward instead of overwriting the earlier snapshot
+        LocalDateTime time = LocalDateTime.now();
+        Path target = snapshotPath(time);
+        while (Files.exists(target) || Files.exists(backupDirectory.resolve(target.getFileName() + ".part"))) {
+            time = time.plusNanos(1_000_000);
+            target = snapshotPath(time);
+        }
+        //write to a temporary file first so a half written backup is never mistaken for a snapshot
+        Path partial = backupDirectory.resolve(target.getFileName() + ".part");
+
+        BackupReport report;
+        try (Connection conn = DatabaseHelper.getConnection()) {
+            int pageSize = pageSize(conn);
+            //hold one read transaction for the whole copy. With WAL this pins a snapshot that writers do not wait
+            //for, and the steps keep reading that snapshot instead of restarting every time someone else writes
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                rs.next();
+            }
+            DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+            StepTimer timer = new StepTimer(PAUSE_BETWEEN_STEPS_MILLIS);
+            int rc = db.backup("main", partial.toString(), timer, BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+            conn.rollback();
+            if (rc != 0) {
+                throw new SQLException("Backup failed with SQLite error code " + rc);
+            }
+            report = timer.report(target, pageSize);
+            //the copy inherits WAL mode, switch it back so opening a snapshot does not leave -wal and -shm files around
+            try (Connection snapshotConn = DriverManager.getConnection("jdbc:sqlite:" + partial);
+                 Statement stmt = snapshotConn.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=DELETE");
+            }
+        } catch (SQLException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        //without REPLACE_EXISTING this fails rather than overwrite a snapshot
+        Files.move(partial, target);
+
+        //retention: keep only the newest snapshots
+        List<Path> snapshots = listSnapshots();
+        for (int i = snapshotsToKeep; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        return report;
+    }
+
+    private Path snapshotPath(LocalDateTime time) {
+        return backupDirectory.resolve(snapshotPrefix + time.format(SNAPSHOT_TIME) + SNAPSHOT_SUFFIX);
+    }
+
+    //replaces the live database with the contents of a snapshot. The whole file is copied in one step, which is the
+    //fastest way, and the snapshot is checked first so a damaged file never overwrites good data
+    private BackupReport restore(Path snapshot) throws SQLException {
+        //opening a missing file would create an empty database and restoring that would wipe everything
+        if (!Files.isRegularFile(snapshot)) {
+            throw new SQLException(snapshot + " does not exist");
+        }
+        try (Connection check = DriverManager.getConnection("jdbc:sqlite:" + snapshot);
+             Statement stmt = check.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+                if (!rs.next() || !"ok".equals(rs.getString(1))) {
+                    throw new SQLException(snapshot.getFileName() + " is damaged");
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'expenses'")) {
+                if (!rs.next() || rs.getInt(1) == 0) {
+                    throw new SQLException(snapshot.getFileName() + " is not a FinanceGuy backup");
+                }
+            }
+        }
+
+        BackupReport report;
+        long liveVersion;
+        try (Connection conn = DatabaseHelper.getConnection()) {
+            //running instances have seen the change log up to here, the restored log is usually behind it
+            liveVersion = DatabaseHelper.getLatestChangeVersion();
+            DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+            StepTimer timer = new StepTimer(0);
+            int rc = db.restore("main", snapshot.toString(), timer, BUSY_SLEEP_MILLIS, BUSY_RETRIES, -1);
+            if (rc != 0) {
+                throw new SQLException("Restore failed with SQLite error code " + rc);
+            }
+            report = timer.report(snapshot, pageSize(conn));
+        }
+        //the restored file may use another storage mode and holds other fingerprints, so re-read both
+        DatabaseHelper.initializeDatabase();
+        //and every running instance has to reload
+        DatabaseHelper.markAllExpensesChanged(liveVersion);
+        return report;
+    }
+
+    private static int pageSize(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA page_size")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    //something that can be run on the backup thread and throws
+    private interface BackupTask {
+        BackupReport run() throws Exception;
+    }
+
+    private CompletableFuture<BackupReport> supplyOnExecutor(BackupTask task) {
+        CompletableFuture<BackupReport> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(task.run());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    //called by SQLite after every step. Measures how long each step held the database and pauses before the next one
+    private static class StepTimer implements DB.ProgressObserver {
+        private final long pauseBetweenSteps;
+        private final long started = System.nanoTime();
+        private long stepStarted = started;
+        private long maxStepNanos;
+        private long totalStepNanos;
+        private int steps;
+        private int pageCount;
+
+        StepTimer(long pauseBetweenSteps) {
+            this.pauseBetweenSteps = pauseBetweenSteps;
+        }
+
+        @Override
+        public void progress(int remaining, int pageCount) {
+            long stepNanos = System.nanoTime() - stepStarted;
+            maxStepNanos = Math.max(maxStepNanos, stepNanos);
+            totalStepNanos += stepNanos;
+            steps++;
+            this.pageCount = pageCount;
+
+            if (remaining > 0 && pauseBetweenSteps > 0) {
+                try {
+                    Thread.sleep(pauseBetweenSteps);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            stepStarted = System.nanoTime();
+        }
+
+        BackupReport report(Path file, int pageSize) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            return new BackupReport(file, pageCount, pageSize, steps, elapsed,
+                    TimeUnit.NANOSECONDS.toMillis(maxStepNanos), TimeUnit.NANOSECONDS.toMillis(totalStepNanos));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.financeguy;
+
+import java.nio.file.Path;
+
+/**
+ * Metrics of a single backup or restore: how much was copied, how fast, and how long the database was held per step.
+ */
+public class BackupReport {
+
+    private final Path file;
+    private final int pageCount;
+    private final int pageSize;
+    private final int steps;
+    private final long elapsedMillis;
+    private final long maxPauseMillis;
+    private final long totalPauseMillis;
+
+    BackupReport(Path file, int pageCount, int pageSize, int steps, long elapsedMillis,
+                 long maxPauseMillis, long totalPauseMillis) {
+        this.file = file;
+        this.pageCount = pageCount;
+        this.pageSize = pageSize;
+        this.steps = steps;
+        this.elapsedMillis = elapsedMillis;
+        this.maxPauseMillis = maxPauseMillis;
+        this.totalPauseMillis = totalPauseMillis;
+    }
+
+    //the snapshot file that was written or read
+    public Path getFile() {
+        return file;
+    }
+
+    //number of database pages copied
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    //bytes copied
+    public long getBytes() {
+        return (long) pageCount * pageSize;
+    }
+
+    //how many steps the copy was split into
+    public int getSteps() {
+        return steps;
+    }
+
+    //wall clock time of the whole copy, including the pauses between steps
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    //longest single step, i.e. the longest time a writer could have been kept waiting
+    public long getMaxPauseMillis() {
+        return maxPauseMillis;
+    }
+
+    //time spent inside steps, the rest of the elapsed time the database was free
+    public long getTotalPauseMillis() {
+        return totalPauseMillis;
+    }
+
+    //copy speed in megabytes per second over the elapsed time
+    public double getThroughputMBps() {
+        if (elapsedMillis == 0) {
+            return 0;
+        }
+        return getBytes() / (1024.0 * 1024.0) / (elapsedMillis / 1000.0);
+    }
+
+    //short human readable summary
+    public String summary() {
+        return String.format("%s: %.1f MB in %d ms (%.1f MB/s), %d steps, longest pause %d ms.",
+                file.getFileName(), getBytes() / (1024.0 * 1024.0), elapsedMillis, getThroughputMBps(),
+                steps, maxPauseMillis);
+    }
+}
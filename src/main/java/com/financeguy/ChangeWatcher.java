@@ -0,0 +1,99 @@
+package com.financeguy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Notices when another connection or process changed the database and hands over only the changed expenses.
+ * Polls SQLite's data_version on one long lived connection, which is cheap and only changes when someone else
+ * commits, and reads the change log only then.
+ */
+public class ChangeWatcher {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //called on the watcher thread with every batch of changes
+    private final Consumer<ExpenseChanges> listener;
+
+    //only used on the watcher thread. data_version is per connection, so it has to stay open between polls
+    private Connection pollConnection;
+    private long dataVersion = -1;
+    //change log version the listener has seen everything up to
+    private long syncedVersion;
+
+    public ChangeWatcher(long syncedVersion, Consumer<ExpenseChanges> listener) {
+        this.syncedVersion = syncedVersion;
+        this.listener = listener;
+    }
+
+    //polls every period
+    public void start(long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(this::poll, period, period, unit);
+    }
+
+    //polls as soon as possible, e.g. right after a background job wrote something
+    public void pollNow() {
+        executor.execute(this::poll);
+    }
+
+    //stops polling and closes the connection
+    public void stop() {
+        executor.execute(this::closeConnection);
+        executor.shutdown();
+    }
+
+    private void poll() {
+        //an exception would cancel the schedule, so never let one escape
+        try {
+            if (pollConnection == null) {
+                pollConnection = DatabaseHelper.getConnection();
+            }
+            long current;
+            try (Statement stmt = pollConnection.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA data_version")) {
+                current = rs.next() ? rs.getLong(1) : 0;
+            }
+            if (current == dataVersion) {
+                return;
+            }
+            dataVersion = current;
+
+            //count what was written in the statistics before the view shows it
+            DatabaseHelper.syncStatistics();
+
+            ExpenseChanges changes = DatabaseHelper.getChangesSince(syncedVersion);
+            syncedVersion = changes.getLatestVersion();
+            if (!changes.isEmpty()) {
+                //expenses added or edited elsewhere count as existing for the duplicate check right away
+                DatabaseHelper.rememberFingerprints(changes.getUpserted());
+                listener.accept(changes);
+            }
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+            //start over with a fresh connection next time
+            closeConnection();
+        }
+    }
+
+    private void closeConnection() {
+        if (pollConnection != null) {
+            try {
+                pollConnection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            pollConnection = null;
+            dataVersion = -1;
+        }
+    }
+}
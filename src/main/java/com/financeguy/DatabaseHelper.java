@@ -1,23 +1,109 @@
 package com.financeguy;
 
 import com.financeguy.model.Expense;
+import com.financeguy.model.RecurringExpense;
 
+import org.sqlite.SQLiteConfig;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 //This class will manage all the database operations like initializing tables, adding/deleting expenses.
 public class DatabaseHelper {
 
-    //path to SQLite database file
-    private static final String DB_URL = "jdbc:sqlite:financeguy.db";
+    //path to SQLite database file, can be pointed elsewhere with -Dfinanceguy.db=path (e.g. for benchmarks)
+    private static final String DB_PATH = System.getProperty("financeguy.db", "financeguy.db");
+    private static final String DB_URL = "jdbc:sqlite:" + DB_PATH;
+
+    //appends an entry to the change log, with the old and new values of the expense where there are any
+    private static final String LOG_CHANGE_SQL = "INSERT INTO expense_changes " +
+            "(expense_id, op, category, amount, date, old_category, old_amount, old_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    //system property that switches the database to one expense table per year, e.g. -Dfinanceguy.storage=partitioned
+    public static final String STORAGE_PROPERTY = "financeguy.storage";
+
+    //the database file, backups are kept next to it
+    public static Path getDatabasePath() {
+        return Paths.get(DB_PATH);
+    }
 
     //making the connection to the SQLite database
     public static Connection getConnection() throws SQLException {
         return DriverManager.getConnection(DB_URL);
     }
 
+    //connection for transactions that read before they write (id counters, duplicate checks). Its transactions take
+    //the write lock at BEGIN, so they wait for other writers instead of failing when one commits first.
+    //a large import holds that lock for several seconds, so they wait longer than the default 3 seconds
+    private static Connection getWriteConnection() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        config.setBusyTimeout(WRITE_BUSY_TIMEOUT_MILLIS);
+        return DriverManager.getConnection(DB_URL, config.toProperties());
+    }
+
+
+    //how long a writer waits for another writer's transaction before giving up with SQLITE_BUSY
+    private static final int WRITE_BUSY_TIMEOUT_MILLIS = 60_000;
+
+    //how many rows a bulk insert sends to SQLite in one batch
+    private static final int BATCH_SIZE = 1000;
+
+    //inserts of fewer rows check duplicates with the fingerprint index alone unless the bloom filter is already
+    //loaded. Loading it reads every stored fingerprint (over a second for a million rows), which only pays off
+    //for a bulk insert and would freeze the FX thread on the first expense added by hand
+    private static final int FILTER_MIN_ROWS = BATCH_SIZE;
+
+    //how many entries of the change log are kept
+    private static final int CHANGE_LOG_LIMIT = 100_000;
+
+    //above this many changes it is cheaper for a reader to reload everything than to fetch the changed rows one by one
+    private static final int CHANGE_RELOAD_THRESHOLD = 10_000;
+
+    //bloom filter in front of the fingerprint index, loaded lazily by the first bulk insert (see FILTER_MIN_ROWS)
+    private static FingerprintBloomFilter fingerprintFilter;
+    //change log version and highest expense id the filter has seen, anything newer was written by someone else
+    //and is added before the filter is trusted again (see catchUpFingerprintFilter)
+    private static long fingerprintFilterVersion;
+    private static long fingerprintFilterMaxId;
+
+    //true when expenses are stored in one table per year (see ExpensePartitions) instead of the single "expenses" table
+    private static volatile boolean partitioned;
+
+    //per category and per month statistics, built in the background on first use and then kept up to date by every
+    //write below and by syncStatistics. Null until the first build is done, after that a rebuild swaps in a new one
+    private static volatile ExpenseStatistics statistics;
+    //change log version the statistics include every change up to, so each change is counted exactly once
+    private static long statisticsVersion;
+    private static final Object STATISTICS_LOCK = new Object();
+    //completes with the first statistics that were built, for callers that have to wait for them
+    private static final CompletableFuture<ExpenseStatistics> firstStatistics = new CompletableFuture<>();
+    //called on the builder thread whenever rebuilt statistics were swapped in
+    private static volatile Runnable statisticsListener;
+    //builds run one at a time on their own thread, never on the caller's (which may be the FX thread)
+    private static final ExecutorService statisticsBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "statistics-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //set while a rebuild is queued but not started yet, further requests until then share it
+    private static final AtomicBoolean statisticsRebuildQueued = new AtomicBoolean();
 
     //Creates the expense table if it does not already exist
     public static void initializeDatabase() {
@@ -27,42 +113,403 @@ public class DatabaseHelper {
                 "category TEXT NOT NULL," +
                 "description TEXT," +
                 "amount REAL NOT NULL," +
-                "date TEXT NOT NULL" +
+                "date TEXT NOT NULL," +
+                "fingerprint TEXT" +
                 ");";
 
         //make sure the connection and statement are closed automatically.
         try (Connection conn = getConnection();
              Statement stmt = conn.createStatement()) {
+            //write-ahead logging lets readers (online backups, parallel partition queries) run while someone writes
+            stmt.execute("PRAGMA journal_mode=WAL");
             stmt.execute(createTableSQL);
+            //databases created before duplicate detection do not have the fingerprint column yet
+            addFingerprintColumnIfMissing(conn);
+            //lookup index used to confirm duplicates, not unique so older duplicate rows do not break the upgrade
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_expenses_fingerprint ON expenses(fingerprint)");
+            //date index for range filters
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_expenses_date ON expenses(date)");
+            //recurring expense rules, generated_count tracks how many occurrences were already written as expenses
+            stmt.execute("CREATE TABLE IF NOT EXISTS recurring_expenses (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "category TEXT NOT NULL," +
+                    "description TEXT," +
+                    "amount REAL NOT NULL," +
+                    "frequency TEXT NOT NULL," +
+                    "start_date TEXT NOT NULL," +
+                    "end_date TEXT," +
+                    "generated_count INTEGER NOT NULL DEFAULT 0" +
+                    ");");
+            //change log written by every mutator, so running instances can pick up only what changed (see ChangeWatcher).
+            //op is 'upsert', 'delete' or 'reset' (everything changed, e.g. after clearing or restoring). The new values
+            //(null for a delete) and old values (null for an insert) let the statistics follow changes without a rebuild
+            stmt.execute("CREATE TABLE IF NOT EXISTS expense_changes (" +
+                    "version INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "expense_id INTEGER NOT NULL," +
+                    "op TEXT NOT NULL," +
+                    "category TEXT," +
+                    "amount REAL," +
+                    "date TEXT," +
+                    "old_category TEXT," +
+                    "old_amount REAL," +
+                    "old_date TEXT" +
+                    ");");
+            //logs written before the statistics followed other instances do not have the values yet
+            addChangeValueColumnsIfMissing(conn);
+            pruneChangeLog(conn);
+            //small key/value table for the storage mode and the next expense id in partitioned mode
+            stmt.execute("CREATE TABLE IF NOT EXISTS settings (key TEXT PRIMARY KEY, value TEXT)");
+            partitioned = "partitioned".equals(readSetting(conn, "storage_mode"));
+            //the database may have been swapped (e.g. by a restore), so the filter is rebuilt on next use. The statistics
+            //follow the change log, a restore logs a reset (see markAllExpensesChanged)
+            resetFingerprintFilter();
         } catch (SQLException e) {
             //if any issues print the error details
             e.printStackTrace();
         }
+
+        //once a database is partitioned it stays that way, the property is only needed for the first start
+        if (!partitioned && "partitioned".equalsIgnoreCase(System.getProperty(STORAGE_PROPERTY))) {
+            enablePartitionedStorage();
+        }
+    }
+
+    //true if expenses are stored in one table per year
+    public static boolean isPartitioned() {
+        return partitioned;
+    }
+
+    //re-reads the storage mode. Another instance may have switched to partitioned storage since this one started,
+    //and writing to the single table after that would put rows where nobody looks. Called at the start of every
+    //write transaction, where the mode cannot change until commit, and by the readers that follow the change log
+    private static void refreshStorageMode(Connection conn) throws SQLException {
+        partitioned = "partitioned".equals(readSetting(conn, "storage_mode"));
+    }
+
+    //moves every expense from the "expenses" table into one table per year and switches to partitioned storage.
+    //ids are kept, so nothing that refers to an expense by id breaks
+    public static boolean enablePartitionedStorage() {
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                //already done, by an earlier call or another instance. Moving again would find the single table empty
+                //and reset the id counter to its old value. Checked inside the write transaction so two instances
+                //switching at once cannot both pass
+                if ("partitioned".equals(readSetting(conn, "storage_mode"))) {
+                    conn.rollback();
+                    partitioned = true;
+                    return true;
+                }
+                List<Integer> years = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT DISTINCT substr(date, 1, 4) FROM expenses")) {
+                    while (rs.next()) {
+                        years.add(Integer.parseInt(rs.getString(1)));
+                    }
+                }
+                for (int year : years) {
+                    ExpensePartitions.createPartition(conn, year);
+                    stmt.executeUpdate("INSERT INTO " + ExpensePartitions.tableName(year) +
+                            " (id, category, description, amount, date, fingerprint)" +
+                            " SELECT id, category, description, amount, date, fingerprint FROM expenses" +
+                            " WHERE substr(date, 1, 4) = '" + year + "'");
+                }
+
+                //new ids continue after the highest id the single table ever handed out
+                long nextId = 1;
+                try (ResultSet rs = stmt.executeQuery("SELECT MAX(seq) FROM sqlite_sequence WHERE name = 'expenses'")) {
+                    if (rs.next()) {
+                        nextId = rs.getLong(1) + 1;
+                    }
+                }
+                stmt.executeUpdate("DELETE FROM expenses");
+                writeSetting(conn, "next_expense_id", String.valueOf(nextId));
+                writeSetting(conn, "storage_mode", "partitioned");
+                //running instances still read the single table, the reset makes them re-read the storage mode and reload
+                long before = latestChangeVersion(conn);
+                logChange(conn, 0, "reset");
+                long after = latestChangeVersion(conn);
+                conn.commit();
+                partitioned = true;
+                //the same expenses are stored as before, so this instance's statistics stay valid
+                recordStatistics(List.of(), List.of(), before, after);
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    //reads a value from the settings table, null if it is not set
+    private static String readSetting(Connection conn, String key) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM settings WHERE key = ?")) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    //stores a value in the settings table
+    private static void writeSetting(Connection conn, String key, String value) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT OR REPLACE INTO settings (key, value) VALUES (?, ?)")) {
+            pstmt.setString(1, key);
+            pstmt.setString(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    //table an expense with the given date is stored in
+    private static String tableFor(LocalDate date) {
+        return partitioned ? ExpensePartitions.tableName(date.getYear()) : "expenses";
+    }
+
+    //every table that may hold expenses between from and to (null for an open range)
+    private static List<String> tablesFor(Connection conn, LocalDate from, LocalDate to) throws SQLException {
+        if (!partitioned) {
+            return List.of("expenses");
+        }
+        return ExpensePartitions.tablesBetween(conn, from, to);
+    }
+
+    //adds the fingerprint column to an existing expenses table and fills it in for the rows already there
+    private static void addFingerprintColumnIfMissing(Connection conn) throws SQLException {
+        boolean hasColumn = false;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(expenses)")) {
+            while (rs.next()) {
+                if ("fingerprint".equalsIgnoreCase(rs.getString("name"))) {
+                    hasColumn = true;
+                }
+            }
+        }
+        if (!hasColumn) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE expenses ADD COLUMN fingerprint TEXT");
+            }
+        }
+
+        //backfill rows without a fingerprint one chunk at a time, so the select is never read while its rows change
+        String selectSQL = "SELECT id, description, amount, date FROM expenses WHERE fingerprint IS NULL LIMIT " + BATCH_SIZE;
+        conn.setAutoCommit(false);
+        try (Statement select = conn.createStatement();
+             PreparedStatement update = conn.prepareStatement("UPDATE expenses SET fingerprint = ? WHERE id = ?")) {
+            int chunkSize;
+            do {
+                chunkSize = 0;
+                try (ResultSet rs = select.executeQuery(selectSQL)) {
+                    while (rs.next()) {
+                        update.setString(1, Expense.fingerprint(rs.getString("description"), rs.getDouble("amount"),
+                                LocalDate.parse(rs.getString("date"))));
+                        update.setInt(2, rs.getInt("id"));
+                        update.addBatch();
+                        chunkSize++;
+                    }
+                }
+                update.executeBatch();
+            } while (chunkSize == BATCH_SIZE);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    //adds the columns with the new values (category, amount, date) and the old values (old_category, old_amount,
+    //old_date) of each change to an existing change log. Entries logged before stay without values
+    private static void addChangeValueColumnsIfMissing(Connection conn) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(expense_changes)")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name").toLowerCase());
+            }
+        }
+        String[][] added = {{"category", "TEXT"}, {"amount", "REAL"}, {"date", "TEXT"},
+                {"old_category", "TEXT"}, {"old_amount", "REAL"}, {"old_date", "TEXT"}};
+        try (Statement stmt = conn.createStatement()) {
+            for (String[] column : added) {
+                if (!columns.contains(column[0])) {
+                    stmt.execute("ALTER TABLE expense_changes ADD COLUMN " + column[0] + " " + column[1]);
+                }
+            }
+        }
+    }
+
+    //returns the bloom filter, building it from the stored fingerprints the first time or once it is over capacity
+    private static synchronized FingerprintBloomFilter getFingerprintFilter(Connection conn) throws SQLException {
+        if (fingerprintFilter == null || fingerprintFilter.isSaturated()) {
+            List<String> tables = tablesFor(conn, null, null);
+            int rowCount = 0;
+            for (String table : tables) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                    if (rs.next()) {
+                        rowCount += rs.getInt(1);
+                    }
+                }
+            }
+            //leave room to grow so the filter is not rebuilt after every few inserts
+            FingerprintBloomFilter filter = new FingerprintBloomFilter(Math.max(10_000, rowCount * 2), 0.01);
+            for (String table : tables) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT fingerprint FROM " + table + " WHERE fingerprint IS NOT NULL")) {
+                    while (rs.next()) {
+                        filter.add(rs.getString(1));
+                    }
+                }
+            }
+            fingerprintFilter = filter;
+            markFingerprintFilterCurrent(conn);
+        }
+        return fingerprintFilter;
+    }
+
+    //adds the fingerprints of expenses written by other instances or tools since the filter was loaded, so its "no"
+    //can be trusted. New rows are found by id, which catches every insert even without a change log entry, edits by
+    //their change log entries. Runs inside the write transaction, so nobody else can write in the meantime
+    private static synchronized void catchUpFingerprintFilter(Connection conn) throws SQLException {
+        if (fingerprintFilter == null) {
+            //built from the database on first use anyway
+            return;
+        }
+        long maxId = maxExpenseId(conn);
+        if (maxId > fingerprintFilterMaxId) {
+            for (String table : tablesFor(conn, null, null)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT fingerprint FROM " + table + " WHERE id > ? AND fingerprint IS NOT NULL")) {
+                    pstmt.setLong(1, fingerprintFilterMaxId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            fingerprintFilter.add(rs.getString(1));
+                        }
+                    }
+                }
+            }
+            fingerprintFilterMaxId = maxId;
+        }
+
+        long oldest;
+        long latest;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MIN(version), 0), COALESCE(MAX(version), 0) FROM expense_changes")) {
+            rs.next();
+            oldest = rs.getLong(1);
+            latest = rs.getLong(2);
+        }
+        if (latest == fingerprintFilterVersion) {
+            return;
+        }
+        //entries were pruned or the log went backwards (restore), so the edits in between are unknown
+        if (latest < fingerprintFilterVersion || oldest > fingerprintFilterVersion + 1) {
+            fingerprintFilter = null;
+            return;
+        }
+        Set<Integer> editedIds = new HashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT expense_id, op FROM expense_changes WHERE version > ?")) {
+            pstmt.setLong(1, fingerprintFilterVersion);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String op = rs.getString(2);
+                    if ("reset".equals(op)) {
+                        //everything may have changed (clear, restore, bulk import)
+                        fingerprintFilter = null;
+                        return;
+                    } else if ("upsert".equals(op)) {
+                        editedIds.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        for (Expense expense : selectExpensesById(conn, editedIds)) {
+            fingerprintFilter.add(expense.getFingerprint());
+        }
+        fingerprintFilterVersion = latest;
+    }
+
+    //records that the filter holds everything up to the current change log version and highest id,
+    //called after building it and after this process wrote (in the same transaction)
+    private static synchronized void markFingerprintFilterCurrent(Connection conn) throws SQLException {
+        if (fingerprintFilter == null) {
+            return;
+        }
+        fingerprintFilterVersion = latestChangeVersion(conn);
+        fingerprintFilterMaxId = maxExpenseId(conn);
+    }
+
+    //highest expense id in any table
+    private static long maxExpenseId(Connection conn) throws SQLException {
+        long maxId = 0;
+        for (String table : tablesFor(conn, null, null)) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+                if (rs.next()) {
+                    maxId = Math.max(maxId, rs.getLong(1));
+                }
+            }
+        }
+        return maxId;
+    }
+
+    //adds the fingerprints of expenses another instance added or edited, fed by the ChangeWatcher
+    public static synchronized void rememberFingerprints(Collection<Expense> expenses) {
+        if (fingerprintFilter != null) {
+            for (Expense expense : expenses) {
+                fingerprintFilter.add(expense.getFingerprint());
+            }
+        }
+    }
+
+    //records a newly written fingerprint in the bloom filter
+    private static synchronized void rememberFingerprint(String fingerprint) {
+        if (fingerprintFilter != null) {
+            fingerprintFilter.add(fingerprint);
+        }
+    }
+
+    //the bloom filter if it is loaded and not over capacity, null otherwise. Never builds it
+    private static synchronized FingerprintBloomFilter loadedFingerprintFilter() {
+        return fingerprintFilter == null || fingerprintFilter.isSaturated() ? null : fingerprintFilter;
+    }
+
+    //checks the bloom filter first and only queries the fingerprint index when the filter says "maybe".
+    //with loadFilter false a filter that is not loaded yet is skipped instead of built
+    private static boolean isDuplicate(Connection conn, PreparedStatement lookup, String fingerprint,
+                                       boolean loadFilter) throws SQLException {
+        FingerprintBloomFilter filter = loadFilter ? getFingerprintFilter(conn) : loadedFingerprintFilter();
+        if (filter != null && !filter.mightContain(fingerprint)) {
+            return false;
+        }
+        lookup.setString(1, fingerprint);
+        try (ResultSet rs = lookup.executeQuery()) {
+            return rs.next();
+        }
     }
 
     //getter method to retrieve all the expenses from the database
     public static List<Expense> getAllExpenses() {
+        return getExpenses(null, null, null);
+    }
+
+    //retrieves the expenses of a category (null for all) dated between from and to (either may be null).
+    //in partitioned mode only the years in the range are read, in parallel, and merged oldest year first
+    public static List<Expense> getExpenses(String category, LocalDate from, LocalDate to) {
         //Create a list to store the collected expense objects
         List<Expense> expenses = new ArrayList<>();
-
-        //SQL query to select all columns from the "expenses" table
-        String query = "SELECT * FROM expenses";
-        //Make sure Connection, Statement and ResultSet are closed
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-
-            //while loop to loop through each row in the result set
-            while (rs.next()) {
-                //converting the row data into expense object
-                Expense expense = new Expense(
-                        rs.getInt("id"),
-                        rs.getString("category"),
-                        rs.getString("description"),
-                        rs.getDouble("amount"),
-                        LocalDate.parse(rs.getString("date")) //convert text date to LocalDate
-                );
-                expenses.add(expense); //add the built expense object to the "expenses" list
+        try {
+            List<String> tables;
+            try (Connection conn = getConnection()) {
+                tables = tablesFor(conn, from, to);
+            }
+            for (List<Expense> part : ExpensePartitions.fanOut(tables,
+                    (conn, table) -> selectExpenses(conn, table, category, from, to))) {
+                expenses.addAll(part);
             }
         } catch (SQLException e) {
             //catch any sql errors and print them
@@ -71,33 +518,530 @@ public class DatabaseHelper {
         return expenses; //return list
     }
 
+    //reads the matching rows of one table
+    private static List<Expense> selectExpenses(Connection conn, String table, String category,
+                                                LocalDate from, LocalDate to) throws SQLException {
+        List<Expense> expenses = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM " + table + rangeWhereClause(category, from, to))) {
+            bindRange(pstmt, category, from, to);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                //while loop to loop through each row in the result set
+                while (rs.next()) {
+                    //converting the row data into expense object
+                    Expense expense = new Expense(
+                            rs.getInt("id"),
+                            rs.getString("category"),
+                            rs.getString("description"),
+                            rs.getDouble("amount"),
+                            LocalDate.parse(rs.getString("date")) //convert text date to LocalDate
+                    );
+                    expenses.add(expense); //add the built expense object to the "expenses" list
+                }
+            }
+        }
+        return expenses;
+    }
 
-    //add expense to database
-    public static void addExpense(Expense expense) {
-        //insert a new row with the specified columns
-        String insertSQL = "INSERT INTO expenses (category, description, amount, date) VALUES (?, ?, ?, ?)";
-        //automatically close the Connection and PreparedStatement
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
-            //set each parameter in the insert SQL statement with values from expense object
-            pstmt.setString(1, expense.getCategory());
-            pstmt.setString(2, expense.getDescription());
-            pstmt.setDouble(3, expense.getAmount());
-            pstmt.setString(4, expense.getDate().toString());
-            pstmt.executeUpdate(); //executing the insert statement to add a new row in "expenses" table
+    //total amount per category for expenses dated between from and to (either may be null), sorted by category.
+    //summed by SQLite per table, in partitioned mode the years are summed in parallel and merged
+    public static Map<String, Double> getCategoryTotals(LocalDate from, LocalDate to) {
+        Map<String, Double> totals = new TreeMap<>();
+        try {
+            List<String> tables;
+            try (Connection conn = getConnection()) {
+                tables = tablesFor(conn, from, to);
+            }
+            List<Map<String, Double>> parts = ExpensePartitions.fanOut(tables, (conn, table) -> {
+                Map<String, Double> part = new HashMap<>();
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT category, SUM(amount) FROM " + table +
+                        rangeWhereClause(null, from, to) + " GROUP BY category")) {
+                    bindRange(pstmt, null, from, to);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            part.put(rs.getString(1), rs.getDouble(2));
+                        }
+                    }
+                }
+                return part;
+            });
+            for (Map<String, Double> part : parts) {
+                part.forEach((category, amount) -> totals.merge(category, amount, Double::sum));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return totals;
+    }
+
+    //WHERE clause for the optional category and date range filters, dates are stored as ISO text so they compare in order
+    private static String rangeWhereClause(String category, LocalDate from, LocalDate to) {
+        List<String> conditions = new ArrayList<>();
+        if (category != null) {
+            conditions.add("category = ?");
+        }
+        if (from != null) {
+            conditions.add("date >= ?");
+        }
+        if (to != null) {
+            conditions.add("date <= ?");
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    //binds the parameters of rangeWhereClause in the same order
+    private static void bindRange(PreparedStatement pstmt, String category, LocalDate from, LocalDate to) throws SQLException {
+        int index = 1;
+        if (category != null) {
+            pstmt.setString(index++, category);
+        }
+        if (from != null) {
+            pstmt.setString(index++, from.toString());
+        }
+        if (to != null) {
+            pstmt.setString(index, to.toString());
+        }
+    }
+
+
+    //add expense to database, returns false if it was skipped because an identical expense already exists
+    public static boolean addExpense(Expense expense) {
+        return addExpense(expense, false);
+    }
+
+    //add expense to database. With allowDuplicate it is written even if an identical expense exists, for when the
+    //user confirmed it really is a second one (two coffees on the same day). Returns false if it was not written
+    public static boolean addExpense(Expense expense, boolean allowDuplicate) {
+        //a single expense goes through the same path as a bulk import
+        ImportReport report = importExpenses(List.of(expense), !allowDuplicate);
+        return report.getInsertedCount() == 1;
+    }
+
+    //true if an expense with the same fingerprint (date, amount and description) is stored
+    public static boolean hasIdenticalExpense(Expense expense) {
+        try (Connection conn = getConnection()) {
+            if (partitioned && !ExpensePartitions.listYears(conn).contains(expense.getDate().getYear())) {
+                return false;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT 1 FROM " + tableFor(expense.getDate()) + " WHERE fingerprint = ? LIMIT 1")) {
+                pstmt.setString(1, expense.getFingerprint());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    //bulk import of many expenses in one transaction, duplicates (against the database or earlier rows of the import) are skipped
+    public static ImportReport importExpenses(List<Expense> expenses) {
+        return importExpenses(expenses, true);
+    }
+
+    private static ImportReport importExpenses(List<Expense> expenses, boolean skipDuplicates) {
+        ImportReport report = new ImportReport();
+        long start = System.currentTimeMillis();
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long before = latestChangeVersion(conn);
+                //counted separately and only added to the report once committed, a rollback writes nothing
+                ImportReport pending = new ImportReport();
+                List<Expense> inserted = insertExpenses(conn, expenses, pending, skipDuplicates);
+                long after = latestChangeVersion(conn);
+                conn.commit();
+                report.addAll(pending);
+                recordStatistics(List.of(), inserted, before, after);
+            } catch (SQLException e) {
+                conn.rollback();
+                //rolled back fingerprints may still be in the bloom filter, drop it so it gets rebuilt
+                resetFingerprintFilter();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        return report;
+    }
+
+    //batched insert shared by the bulk paths. Runs inside the caller's transaction and does not commit.
+    //returns the expenses that were written, so the caller can count them in the statistics once committed.
+    //report gets the rows as they are batched, so callers pass one they only publish after the commit.
+    //without skipDuplicates every row is written, even one identical to a stored expense
+    private static List<Expense> insertExpenses(Connection conn, List<Expense> expenses, ImportReport report,
+                                                boolean skipDuplicates) throws SQLException {
+        List<Expense> inserted = new ArrayList<>();
+        //one lookup and one insert statement per table written to, in partitioned mode that is one per year
+        Map<String, PreparedStatement> lookups = new HashMap<>();
+        Map<String, PreparedStatement> inserts = new HashMap<>();
+        refreshStorageMode(conn);
+        //ids are handed out here so they can go into the change log with the same batch
+        long nextId = nextExpenseId(conn);
+        //others may have written since the bloom filter was last used
+        catchUpFingerprintFilter(conn);
+        //readers reload everything after this many changes anyway, so a big import logs a single reset instead of
+        //an entry per row that would only fill the log
+        boolean logEachRow = expenses.size() <= CHANGE_RELOAD_THRESHOLD;
+        boolean loadFilter = expenses.size() >= FILTER_MIN_ROWS;
+        try (PreparedStatement logChange = conn.prepareStatement(LOG_CHANGE_SQL)) {
+            //fingerprints queued in the current batch are not in the index yet, so they are tracked here
+            Set<String> pendingFingerprints = new HashSet<>();
+            for (Expense expense : expenses) {
+                String table = tableFor(expense.getDate());
+                PreparedStatement lookup = lookups.get(table);
+                if (lookup == null) {
+                    if (partitioned) {
+                        ExpensePartitions.createPartition(conn, expense.getDate().getYear());
+                    }
+                    lookup = conn.prepareStatement("SELECT 1 FROM " + table + " WHERE fingerprint = ? LIMIT 1");
+                    lookups.put(table, lookup);
+                    inserts.put(table, conn.prepareStatement("INSERT INTO " + table +
+                            " (id, category, description, amount, date, fingerprint) VALUES (?, ?, ?, ?, ?, ?)"));
+                }
+
+                String fingerprint = expense.getFingerprint();
+                if (skipDuplicates && (pendingFingerprints.contains(fingerprint) || isDuplicate(conn, lookup, fingerprint, loadFilter))) {
+                    report.recordSkipped(expense);
+                    continue;
+                }
+                PreparedStatement pstmt = inserts.get(table);
+                long id = nextId++;
+                pstmt.setLong(1, id);
+                pstmt.setString(2, expense.getCategory());
+                pstmt.setString(3, expense.getDescription());
+                pstmt.setDouble(4, expense.getAmount());
+                pstmt.setString(5, expense.getDate().toString());
+                pstmt.setString(6, fingerprint);
+                pstmt.addBatch();
+                if (logEachRow) {
+                    bindChange(logChange, id, "upsert", null, expense);
+                    logChange.addBatch();
+                }
+                pendingFingerprints.add(fingerprint);
+                rememberFingerprint(fingerprint);
+                report.recordInserted();
+                inserted.add(expense);
+                if (pendingFingerprints.size() >= BATCH_SIZE) {
+                    for (PreparedStatement insert : inserts.values()) {
+                        insert.executeBatch();
+                    }
+                    logChange.executeBatch();
+                    pendingFingerprints.clear();
+                }
+            }
+            for (PreparedStatement insert : inserts.values()) {
+                insert.executeBatch();
+            }
+            logChange.executeBatch();
+            if (!logEachRow && !inserted.isEmpty()) {
+                logChange(conn, 0, "reset");
+            }
+            pruneChangeLog(conn);
+            if (partitioned) {
+                writeSetting(conn, "next_expense_id", String.valueOf(nextId));
+            }
+            markFingerprintFilterCurrent(conn);
+            return inserted;
+        } finally {
+            for (PreparedStatement lookup : lookups.values()) {
+                lookup.close();
+            }
+            for (PreparedStatement insert : inserts.values()) {
+                insert.close();
+            }
+        }
+    }
+
+    //next free expense id. The single table keeps its AUTOINCREMENT counter in sqlite_sequence (an explicit id moves
+    //it forward too), partitions use the counter in settings. Only safe inside a write transaction
+    private static long nextExpenseId(Connection conn) throws SQLException {
+        if (partitioned) {
+            return Long.parseLong(readSetting(conn, "next_expense_id"));
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) + 1 FROM sqlite_sequence WHERE name = 'expenses'")) {
+            return rs.next() ? rs.getLong(1) : 1;
+        }
+    }
+
+    //appends one entry without values to the change log, used for resets
+    private static void logChange(Connection conn, long expenseId, String op) throws SQLException {
+        logChange(conn, expenseId, op, null, null);
+    }
+
+    //appends one entry to the change log. previous are the values before the change (null for an insert),
+    //current the values after it (null for a delete)
+    private static void logChange(Connection conn, long expenseId, String op, Expense previous, Expense current) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(LOG_CHANGE_SQL)) {
+            bindChange(pstmt, expenseId, op, previous, current);
+            pstmt.executeUpdate();
+        }
+        pruneChangeLog(conn);
+    }
+
+    //binds the parameters of LOG_CHANGE_SQL
+    private static void bindChange(PreparedStatement pstmt, long expenseId, String op, Expense previous, Expense current) throws SQLException {
+        pstmt.setLong(1, expenseId);
+        pstmt.setString(2, op);
+        pstmt.setString(3, current == null ? null : current.getCategory());
+        pstmt.setObject(4, current == null ? null : current.getAmount());
+        pstmt.setString(5, current == null ? null : current.getDate().toString());
+        pstmt.setString(6, previous == null ? null : previous.getCategory());
+        pstmt.setObject(7, previous == null ? null : previous.getAmount());
+        pstmt.setString(8, previous == null ? null : previous.getDate().toString());
+    }
+
+    //latest version in the change log as seen by conn, 0 if nothing was logged yet
+    private static long latestChangeVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM expense_changes")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    //keeps the change log bounded, readers that fall further behind than this simply reload everything.
+    //runs with every write so a long running instance does not grow it, cheap when there is nothing to prune
+    private static void pruneChangeLog(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM expense_changes WHERE version <= (SELECT MAX(version) FROM expense_changes) - " + CHANGE_LOG_LIMIT);
+        }
+    }
+
+    //forgets the bloom filter, the next duplicate check rebuilds it from the database
+    private static synchronized void resetFingerprintFilter() {
+        fingerprintFilter = null;
+    }
+
+    //spending statistics of every stored expense, waits for the first build if it is not done yet.
+    //the FX thread uses getStatisticsIfBuilt instead
+    public static ExpenseStatistics getStatistics() {
+        ExpenseStatistics current = statistics;
+        if (current != null) {
+            return current;
+        }
+        rebuildStatistics();
+        return firstStatistics.join();
+    }
+
+    //the statistics if the first build is done, null otherwise. Never waits, so safe on the FX thread
+    public static ExpenseStatistics getStatisticsIfBuilt() {
+        return statistics;
+    }
+
+    //called on a background thread every time rebuilt statistics replace the old ones, e.g. to redraw what shows them
+    public static void setStatisticsListener(Runnable listener) {
+        statisticsListener = listener;
+    }
+
+    //counts the statistics again on the builder thread and swaps them in once done, until then the old ones stay in
+    //use. Needed when the changes since the last count are not known one by one (the data was cleared or restored)
+    public static void rebuildStatistics() {
+        if (statisticsRebuildQueued.compareAndSet(false, true)) {
+            statisticsBuilder.execute(() -> {
+                statisticsRebuildQueued.set(false);
+                ExpenseStatistics built = new ExpenseStatistics();
+                long version = buildStatistics(built);
+                synchronized (STATISTICS_LOCK) {
+                    statistics = built;
+                    statisticsVersion = version;
+                }
+                firstStatistics.complete(built);
+                //writes committed while the build ran are in the log
+                syncStatistics();
+                notifyStatisticsListener();
+            });
+        }
+    }
+
+    private static void notifyStatisticsListener() {
+        Runnable listener = statisticsListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    //reads only category, amount and month of every row and counts them as they stream by, nothing is kept per row.
+    //rows and change log are read in one transaction, so the returned version is exactly what the build counted
+    private static long buildStatistics(ExpenseStatistics built) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                refreshStorageMode(conn);
+                long version = latestChangeVersion(conn);
+                for (String table : tablesFor(conn, null, null)) {
+                    //SQLite cuts year and month out of the ISO date, much cheaper than parsing a LocalDate per row
+                    try (ResultSet rs = stmt.executeQuery("SELECT category, amount, CAST(substr(date, 1, 4) AS INTEGER), " +
+                            "CAST(substr(date, 6, 2) AS INTEGER) FROM " + table)) {
+                        while (rs.next()) {
+                            built.add(rs.getString(1), rs.getDouble(2), YearMonth.of(rs.getInt(3), rs.getInt(4)));
+                        }
+                    }
+                }
+                return version;
+            } finally {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    //applies a committed write to the statistics, removed are the old values of edited or deleted expenses.
+    //before and after are the change log versions around the write, read inside its transaction. It only counts if
+    //the statistics are exactly at before: otherwise a build that started after the commit counted it already, or
+    //changes of others are still missing and syncStatistics applies this write from the log right after them
+    private static void recordStatistics(List<Expense> removed, List<Expense> added, long before, long after) {
+        synchronized (STATISTICS_LOCK) {
+            if (statistics == null || statisticsVersion != before) {
+                return;
+            }
+            for (Expense expense : removed) {
+                statistics.remove(expense);
+            }
+            for (Expense expense : added) {
+                statistics.add(expense);
+            }
+            statisticsVersion = after;
+        }
+    }
+
+    //one entry of the change log with the values the statistics need
+    private static class LoggedChange {
+        final long version;
+        final String category;
+        final double amount;
+        final YearMonth month;
+        final String oldCategory;
+        final double oldAmount;
+        final YearMonth oldMonth;
+
+        LoggedChange(ResultSet rs) throws SQLException {
+            version = rs.getLong("version");
+            category = rs.getString("category");
+            amount = rs.getDouble("amount");
+            month = category == null ? null : YearMonth.from(LocalDate.parse(rs.getString("date")));
+            oldCategory = rs.getString("old_category");
+            oldAmount = rs.getDouble("old_amount");
+            oldMonth = oldCategory == null ? null : YearMonth.from(LocalDate.parse(rs.getString("old_date")));
+        }
+    }
+
+    //brings the statistics up to date with writes they have not counted yet, e.g. by other instances, using the old
+    //and new values the change log keeps. Called by the ChangeWatcher. Rebuilds instead when the log cannot say what
+    //changed: a reset, a gap (pruned, or an older database was restored) or entries logged without values
+    public static void syncStatistics() {
+        ExpenseStatistics current;
+        long from;
+        synchronized (STATISTICS_LOCK) {
+            current = statistics;
+            from = statisticsVersion;
+        }
+        if (current == null) {
+            //the first build reads everything anyway
+            return;
+        }
+
+        long latest;
+        List<LoggedChange> changes = new ArrayList<>();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long oldest;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MIN(version), 0), COALESCE(MAX(version), 0) FROM expense_changes")) {
+                    rs.next();
+                    oldest = rs.getLong(1);
+                    latest = rs.getLong(2);
+                }
+                if (latest == from) {
+                    return;
+                }
+                if (latest < from || oldest > from + 1) {
+                    rebuildStatistics();
+                    return;
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT * FROM expense_changes WHERE version > ? ORDER BY version")) {
+                    pstmt.setLong(1, from);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            String op = rs.getString("op");
+                            boolean hasValues = "delete".equals(op) ? rs.getString("old_category") != null
+                                    : "upsert".equals(op) && rs.getString("category") != null;
+                            if (!hasValues) {
+                                rebuildStatistics();
+                                return;
+                            }
+                            changes.add(new LoggedChange(rs));
+                        }
+                    }
+                }
+            } finally {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        synchronized (STATISTICS_LOCK) {
+            if (statistics != current) {
+                //a rebuild swapped in meanwhile and catches up by itself
+                return;
+            }
+            for (LoggedChange change : changes) {
+                //the write path may have recorded its own changes while the log was read
+                if (change.version <= statisticsVersion) {
+                    continue;
+                }
+                if (change.oldCategory != null) {
+                    current.remove(change.oldCategory, change.oldAmount, change.oldMonth);
+                }
+                if (change.category != null) {
+                    current.add(change.category, change.amount, change.month);
+                }
+            }
+            statisticsVersion = Math.max(statisticsVersion, latest);
+        }
     }
 
     //clears all the data from the expense table
     public static boolean clearDatabase() {
-        //delete all rows from the table
-        String deleteSQL = "DELETE FROM expenses";
         //automatic cleanup
-        try (Connection conn = getConnection();
+        try (Connection conn = getWriteConnection();
              Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(deleteSQL);
+            conn.setAutoCommit(false);
+            try {
+                refreshStorageMode(conn);
+                //delete all rows from the table, in partitioned mode the yearly tables are dropped
+                stmt.executeUpdate("DELETE FROM expenses");
+                if (partitioned) {
+                    for (String table : ExpensePartitions.tablesBetween(conn, null, null)) {
+                        stmt.executeUpdate("DROP TABLE " + table);
+                    }
+                }
+                //the recurring rules go too, otherwise they would start filling the empty database again
+                stmt.executeUpdate("DELETE FROM recurring_expenses");
+                //a reset makes every reader reload, so older change log entries are no longer needed
+                stmt.executeUpdate("DELETE FROM expense_changes");
+                logChange(conn, 0, "reset");
+                long after = latestChangeVersion(conn);
+                conn.commit();
+                //nothing left to count, so no rebuild is needed
+                synchronized (STATISTICS_LOCK) {
+                    statistics = new ExpenseStatistics();
+                    statisticsVersion = after;
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            resetFingerprintFilter();
+            notifyStatisticsListener();
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -105,8 +1049,9 @@ public class DatabaseHelper {
         }
     }
 
-    //inserts sample data into the expense table
-    public static void insertSampleData() {
+    //inserts sample data into the expense table. Loading it twice on the same day finds the same expenses,
+    //which are skipped like any duplicate, so the report tells the caller what was actually added
+    public static ImportReport insertSampleData() {
         List<Expense> sampleExpenses = new ArrayList<>();
         //making sample expenses of three different categories
         sampleExpenses.add(new Expense("Food", "Lunch at cafe", 12.50, LocalDate.now().minusDays(1)));
@@ -114,26 +1059,73 @@ public class DatabaseHelper {
         sampleExpenses.add(new Expense("Entertainment", "Netflix Bill", 15.00, LocalDate.now().minusDays(3)));
 
         //adding sample expenses into the database
-        for (Expense expense : sampleExpenses) {
-            addExpense(expense);
-        }
+        return importExpenses(sampleExpenses);
     }
 
     //updates existing expenses in the expense table
     public static void updateExpense(Expense expense) {
-        //update an existing row and match it by ID
-        String updateSQL = "UPDATE expenses SET category = ?, description = ?, amount = ?, date = ? WHERE id = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(updateSQL)) {
+        String fingerprint = expense.getFingerprint();
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            refreshStorageMode(conn);
+            //the old values leave the statistics once the change is committed
+            List<Expense> previous = selectExpensesById(conn, List.of(expense.getId()));
+            long before = latestChangeVersion(conn);
+            if (previous.isEmpty()) {
+                //unknown or already deleted (e.g. by another instance while the edit dialog was open), nothing to update
+                conn.rollback();
+                return;
+            }
+            if (partitioned) {
+                //the new date may belong to another year, so the row is moved: removed wherever it is and
+                //written to the right partition with the same id
+                try {
+                    deleteFromPartitions(conn, expense.getId());
+                    ExpensePartitions.createPartition(conn, expense.getDate().getYear());
+                    try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + tableFor(expense.getDate()) +
+                            " (id, category, description, amount, date, fingerprint) VALUES (?, ?, ?, ?, ?, ?)")) {
+                        pstmt.setInt(1, expense.getId());
+                        pstmt.setString(2, expense.getCategory());
+                        pstmt.setString(3, expense.getDescription());
+                        pstmt.setDouble(4, expense.getAmount());
+                        pstmt.setString(5, expense.getDate().toString());
+                        pstmt.setString(6, fingerprint);
+                        pstmt.executeUpdate();
+                    }
+                    logChange(conn, expense.getId(), "upsert", previous.get(0), expense);
+                    long after = latestChangeVersion(conn);
+                    conn.commit();
+                    recordStatistics(previous, List.of(expense), before, after);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+                rememberFingerprint(fingerprint);
+                return;
+            }
 
-            //Bind the fields of the expense object to the corresponding parameter in the update statement
-            pstmt.setString(1, expense.getCategory());
-            pstmt.setString(2, expense.getDescription());
-            pstmt.setDouble(3, expense.getAmount());
-            pstmt.setString(4, expense.getDate().toString());
-            pstmt.setInt(5, expense.getId());
+            //update an existing row and match it by ID
+            String updateSQL = "UPDATE expenses SET category = ?, description = ?, amount = ?, date = ?, fingerprint = ? WHERE id = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(updateSQL)) {
 
-            pstmt.executeUpdate();
+                //Bind the fields of the expense object to the corresponding parameter in the update statement
+                pstmt.setString(1, expense.getCategory());
+                pstmt.setString(2, expense.getDescription());
+                pstmt.setDouble(3, expense.getAmount());
+                pstmt.setString(4, expense.getDate().toString());
+                pstmt.setString(5, fingerprint);
+                pstmt.setInt(6, expense.getId());
+
+                pstmt.executeUpdate();
+                logChange(conn, expense.getId(), "upsert", previous.get(0), expense);
+                long after = latestChangeVersion(conn);
+                conn.commit();
+                rememberFingerprint(fingerprint);
+                recordStatistics(previous, List.of(expense), before, after);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -142,19 +1134,312 @@ public class DatabaseHelper {
 
     //deletes a single expense from the database given the unique ID it possesses
     public static void deleteExpense(int id) {
-        //Removes single matching row by ID
-        String deleteSQL = "DELETE FROM expenses WHERE id = ?";
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                refreshStorageMode(conn);
+                List<Expense> previous = selectExpensesById(conn, List.of(id));
+                if (previous.isEmpty()) {
+                    //already gone, nothing to delete or log
+                    conn.rollback();
+                    return;
+                }
+                long before = latestChangeVersion(conn);
+                if (partitioned) {
+                    deleteFromPartitions(conn, id);
+                } else {
+                    //Removes single matching row by ID
+                    try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM expenses WHERE id = ?")) {
+                        //bounds the ID
+                        pstmt.setInt(1, id);
+                        pstmt.executeUpdate();
+                    }
+                }
+                logChange(conn, id, "delete", previous.get(0), null);
+                long after = latestChangeVersion(conn);
+                conn.commit();
+                recordStatistics(previous, List.of(), before, after);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //removes the expense with the given id from whichever partition holds it, an id lookup is cheap in every year
+    private static void deleteFromPartitions(Connection conn, int id) throws SQLException {
+        for (String table : ExpensePartitions.tablesBetween(conn, null, null)) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE id = ?")) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+
+    //latest version in the change log, 0 if nothing was logged yet
+    public static long getLatestChangeVersion() {
+        try (Connection conn = getConnection()) {
+            return latestChangeVersion(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    //tells every reader to reload everything, used after the whole database was replaced
+    public static void markAllExpensesChanged() {
+        markAllExpensesChanged(0);
+    }
+
+    //same, for a database that replaced one whose change log had reached seenVersion. The restored log may be
+    //behind that, and a reset with a version readers already had would look like nothing changed to them, so the
+    //reset gets a version above both the restored log and seenVersion
+    public static void markAllExpensesChanged(long seenVersion) {
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long version = Math.max(latestChangeVersion(conn), seenVersion) + 1;
+                //an explicit version moves the AUTOINCREMENT counter forward too, later entries continue after it
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO expense_changes (version, expense_id, op) VALUES (?, 0, 'reset')")) {
+                    pstmt.setLong(1, version);
+                    pstmt.executeUpdate();
+                }
+                pruneChangeLog(conn);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        //this instance too, the reset makes its statistics rebuild
+        syncStatistics();
+    }
+
+    //collects the expenses added, edited or deleted after the given change log version. Several changes to the same
+    //expense collapse into its current state, so the caller only has to apply each expense once
+    public static ExpenseChanges getChangesSince(long version) {
+        try (Connection conn = getConnection()) {
+            //read the log and the rows from the same snapshot
+            conn.setAutoCommit(false);
+            try {
+                //a switch to partitioned storage logs a reset, the reload that follows has to read the new tables
+                refreshStorageMode(conn);
+                long oldest;
+                long latest;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MIN(version), 0), COALESCE(MAX(version), 0) FROM expense_changes")) {
+                    rs.next();
+                    oldest = rs.getLong(1);
+                    latest = rs.getLong(2);
+                }
+                if (latest == version) {
+                    return ExpenseChanges.none(version);
+                }
+                //the log went backwards (older database restored), entries the caller needs were pruned,
+                //or so much changed (e.g. a big import) that a full reload is faster
+                if (latest < version || oldest > version + 1 || latest - version > CHANGE_RELOAD_THRESHOLD) {
+                    return ExpenseChanges.all(latest);
+                }
+
+                Set<Integer> upsertedIds = new HashSet<>();
+                Set<Integer> deletedIds = new HashSet<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT expense_id, op FROM expense_changes WHERE version > ? ORDER BY version")) {
+                    pstmt.setLong(1, version);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            int id = rs.getInt(1);
+                            String op = rs.getString(2);
+                            if ("reset".equals(op)) {
+                                return ExpenseChanges.all(latest);
+                            } else if ("delete".equals(op)) {
+                                upsertedIds.remove(id);
+                                deletedIds.add(id);
+                            } else {
+                                deletedIds.remove(id);
+                                upsertedIds.add(id);
+                            }
+                        }
+                    }
+                }
+
+                List<Expense> upserted = selectExpensesById(conn, upsertedIds);
+                //an id that is gone by now was deleted by a change newer than our snapshot of the log
+                for (Expense expense : upserted) {
+                    upsertedIds.remove(expense.getId());
+                }
+                deletedIds.addAll(upsertedIds);
+                return new ExpenseChanges(latest, false, upserted, deletedIds);
+            } finally {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return ExpenseChanges.none(version);
+        }
+    }
+
+    //reads the expenses with the given ids, looking in every table since an id does not tell which year it is in
+    private static List<Expense> selectExpensesById(Connection conn, Collection<Integer> ids) throws SQLException {
+        List<Expense> expenses = new ArrayList<>();
+        List<Integer> remaining = new ArrayList<>(ids);
+        //SQLite limits the number of parameters per statement, so ask in chunks
+        for (int start = 0; start < remaining.size(); start += 500) {
+            List<Integer> chunk = remaining.subList(start, Math.min(start + 500, remaining.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            for (String table : tablesFor(conn, null, null)) {
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM " + table + " WHERE id IN (" + placeholders + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            expenses.add(new Expense(
+                                    rs.getInt("id"),
+                                    rs.getString("category"),
+                                    rs.getString("description"),
+                                    rs.getDouble("amount"),
+                                    LocalDate.parse(rs.getString("date"))
+                            ));
+                        }
+                    }
+                }
+            }
+        }
+        return expenses;
+    }
+
+
+    //stores a new recurring expense rule, its occurrences are written by materializeRecurringExpenses
+    public static void addRecurringExpense(RecurringExpense rule) {
+        String insertSQL = "INSERT INTO recurring_expenses (category, description, amount, frequency, start_date, end_date, generated_count) " +
+                "VALUES (?, ?, ?, ?, ?, ?, 0)";
         try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(deleteSQL)) {
+             PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
+            pstmt.setString(1, rule.getCategory());
+            pstmt.setString(2, rule.getDescription());
+            pstmt.setDouble(3, rule.getAmount());
+            pstmt.setString(4, rule.getFrequency().name());
+            pstmt.setString(5, rule.getStartDate().toString());
+            pstmt.setString(6, rule.getEndDate() == null ? null : rule.getEndDate().toString());
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
 
-            //bounds the ID
+    //stops a rule after the given date, occurrences up to it that were already written stay
+    public static void endRecurringExpense(int id, LocalDate endDate) {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE recurring_expenses SET end_date = ? WHERE id = ?")) {
+            pstmt.setString(1, endDate.toString());
+            pstmt.setInt(2, id);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //removes a rule, the expenses it already wrote are kept like any other expense
+    public static void deleteRecurringExpense(int id) {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recurring_expenses WHERE id = ?")) {
             pstmt.setInt(1, id);
             pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
 
+    //getter method to retrieve all recurring expense rules
+    public static List<RecurringExpense> getAllRecurringExpenses() {
+        List<RecurringExpense> rules = new ArrayList<>();
+        try (Connection conn = getConnection()) {
+            rules = readRecurringExpenses(conn);
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return rules;
+    }
+
+    private static List<RecurringExpense> readRecurringExpenses(Connection conn) throws SQLException {
+        List<RecurringExpense> rules = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM recurring_expenses")) {
+            while (rs.next()) {
+                String endDate = rs.getString("end_date");
+                rules.add(new RecurringExpense(
+                        rs.getInt("id"),
+                        rs.getString("category"),
+                        rs.getString("description"),
+                        rs.getDouble("amount"),
+                        RecurringExpense.Frequency.valueOf(rs.getString("frequency")),
+                        LocalDate.parse(rs.getString("start_date")),
+                        endDate == null ? null : LocalDate.parse(endDate),
+                        rs.getInt("generated_count")
+                ));
+            }
+        }
+        return rules;
     }
 
+    //writes every recurring occurrence due on or before the given date. All missed periods of all rules are
+    //written in one batched transaction together with the rule bookkeeping, so a catch-up after months offline is
+    //a single commit and a crash halfway leaves nothing half generated. Two calls at once are serialized by the
+    //write transaction (the second one reads the rules after the first committed), so no Java lock is held here:
+    //waiting for SQLite's write lock while holding one would deadlock with an import that needs it per row
+    public static ImportReport materializeRecurringExpenses(LocalDate upTo) {
+        ImportReport report = new ImportReport();
+        long start = System.currentTimeMillis();
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement updateRule = conn.prepareStatement(
+                    "UPDATE recurring_expenses SET generated_count = ? WHERE id = ?")) {
+                long before = latestChangeVersion(conn);
+                List<Expense> due = new ArrayList<>();
+                for (RecurringExpense rule : readRecurringExpenses(conn)) {
+                    //the last date to generate is the earlier of the rule's end date and upTo
+                    LocalDate last = rule.getEndDate() != null && rule.getEndDate().isBefore(upTo) ? rule.getEndDate() : upTo;
+                    int generated = rule.getGeneratedCount();
+                    while (!rule.getFrequency().occurrence(rule.getStartDate(), generated).isAfter(last)) {
+                        due.add(rule.toExpense(generated));
+                        generated++;
+                    }
+                    if (generated != rule.getGeneratedCount()) {
+                        updateRule.setInt(1, generated);
+                        updateRule.setInt(2, rule.getId());
+                        updateRule.addBatch();
+                    }
+                }
+                List<Expense> inserted = List.of();
+                //only added to the report once committed, like in importExpenses
+                ImportReport pending = new ImportReport();
+                if (!due.isEmpty()) {
+                    //occurrences that were already entered by hand are skipped as duplicates
+                    inserted = insertExpenses(conn, due, pending, true);
+                    updateRule.executeBatch();
+                }
+                long after = latestChangeVersion(conn);
+                conn.commit();
+                report.addAll(pending);
+                recordStatistics(List.of(), inserted, before, after);
+            } catch (SQLException e) {
+                conn.rollback();
+                resetFingerprintFilter();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        return report;
+    }
 
 }
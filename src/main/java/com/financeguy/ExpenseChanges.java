@@ -0,0 +1,60 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The expenses that changed since a given change log version, as returned by DatabaseHelper.getChangesSince.
+ * When reloadAll is set the individual changes are not known (the data was cleared or restored, or the reader fell
+ * too far behind) and everything has to be loaded again.
+ */
+public class ExpenseChanges {
+
+    private final long latestVersion;
+    private final boolean reloadAll;
+    private final List<Expense> upserted;
+    private final Set<Integer> deletedIds;
+
+    ExpenseChanges(long latestVersion, boolean reloadAll, List<Expense> upserted, Set<Integer> deletedIds) {
+        this.latestVersion = latestVersion;
+        this.reloadAll = reloadAll;
+        this.upserted = upserted;
+        this.deletedIds = deletedIds;
+    }
+
+    //no changes, the reader is still at the given version
+    static ExpenseChanges none(long version) {
+        return new ExpenseChanges(version, false, Collections.emptyList(), Collections.emptySet());
+    }
+
+    //everything has to be reloaded
+    static ExpenseChanges all(long latestVersion) {
+        return new ExpenseChanges(latestVersion, true, Collections.emptyList(), Collections.emptySet());
+    }
+
+    //version to ask for next time
+    public long getLatestVersion() {
+        return latestVersion;
+    }
+
+    public boolean isReloadAll() {
+        return reloadAll;
+    }
+
+    //expenses that were added or edited, with their current values
+    public List<Expense> getUpserted() {
+        return upserted;
+    }
+
+    //ids of expenses that were deleted
+    public Set<Integer> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public boolean isEmpty() {
+        return !reloadAll && upserted.isEmpty() && deletedIds.isEmpty();
+    }
+}
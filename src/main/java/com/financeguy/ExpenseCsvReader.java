@@ -0,0 +1,68 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads expenses from a CSV export with the columns date, category, description, amount.
+ * The date must be in yyyy-MM-dd format. Lines that cannot be parsed (like a header row) are skipped.
+ */
+public class ExpenseCsvReader {
+
+    //reads every parsable line of the file into an expense
+    public static List<Expense> read(Path file) throws IOException {
+        List<Expense> expenses = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Expense expense = parseLine(line);
+                if (expense != null) {
+                    expenses.add(expense);
+                }
+            }
+        }
+        return expenses;
+    }
+
+    //turns one CSV line into an expense, returns null if the line does not look like an expense
+    static Expense parseLine(String line) {
+        String[] fields = line.split(",");
+        if (fields.length < 4) {
+            return null;
+        }
+        try {
+            LocalDate date = LocalDate.parse(unquote(fields[0]));
+            String category = unquote(fields[1]);
+            double amount = Double.parseDouble(unquote(fields[fields.length - 1]));
+            //descriptions may contain commas, so everything between category and amount belongs to it
+            StringBuilder description = new StringBuilder();
+            for (int i = 2; i < fields.length - 1; i++) {
+                if (i > 2) {
+                    description.append(',');
+                }
+                description.append(fields[i]);
+            }
+            return new Expense(category, unquote(description.toString()), amount, date);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    //trims whitespace and surrounding double quotes
+    private static String unquote(String field) {
+        String trimmed = field.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1).replace("\"\"", "\"");
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,117 @@
+package com.financeguy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for the partitioned storage mode, where expenses live in one table per year (expenses_2024, expenses_2025...).
+ * Finds the partitions a date range can touch and runs a query on several partitions in parallel.
+ * DatabaseHelper is the only user, the rest of the app never sees partitions.
+ */
+class ExpensePartitions {
+
+    //one query per partition at a time, each with its own connection. SQLite allows any number of concurrent readers
+    private static final ExecutorService QUERY_POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "partition-query");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    //a query that is run once against every partition
+    interface PartitionQuery<T> {
+        T run(Connection conn, String table) throws SQLException;
+    }
+
+    //name of the table holding the expenses of a year
+    static String tableName(int year) {
+        return "expenses_" + year;
+    }
+
+    //creates the table for a year if it is not there yet. Same columns as "expenses", but ids are handed out by
+    //DatabaseHelper so they stay unique across all partitions
+    static void createPartition(Connection conn, int year) throws SQLException {
+        String table = tableName(year);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " (" +
+                    "id INTEGER PRIMARY KEY," +
+                    "category TEXT NOT NULL," +
+                    "description TEXT," +
+                    "amount REAL NOT NULL," +
+                    "date TEXT NOT NULL," +
+                    "fingerprint TEXT" +
+                    ");");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_fingerprint ON " + table + "(fingerprint)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_date ON " + table + "(date)");
+        }
+    }
+
+    //every year that has a partition, oldest first
+    static List<Integer> listYears(Connection conn) throws SQLException {
+        List<Integer> years = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' " +
+                     "AND name GLOB 'expenses_[0-9][0-9][0-9][0-9]' ORDER BY name")) {
+            while (rs.next()) {
+                years.add(Integer.parseInt(rs.getString(1).substring("expenses_".length())));
+            }
+        }
+        return years;
+    }
+
+    //partitions that can hold expenses between from and to (either may be null for an open range), oldest first.
+    //every other partition is pruned and never queried
+    static List<String> tablesBetween(Connection conn, LocalDate from, LocalDate to) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        for (int year : listYears(conn)) {
+            if ((from == null || year >= from.getYear()) && (to == null || year <= to.getYear())) {
+                tables.add(tableName(year));
+            }
+        }
+        return tables;
+    }
+
+    //runs the query on every table and returns the results in the same order as the tables.
+    //a single table is queried on the calling thread, more than one are spread over the query pool
+    static <T> List<T> fanOut(List<String> tables, PartitionQuery<T> query) throws SQLException {
+        List<T> results = new ArrayList<>();
+        if (tables.size() == 1) {
+            try (Connection conn = DatabaseHelper.getConnection()) {
+                results.add(query.run(conn, tables.get(0)));
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>();
+        for (String table : tables) {
+            futures.add(QUERY_POOL.submit(() -> {
+                try (Connection conn = DatabaseHelper.getConnection()) {
+                    return query.run(conn, table);
+                }
+            }));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while querying partitions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Partition query failed", e.getCause());
+        }
+        return results;
+    }
+}
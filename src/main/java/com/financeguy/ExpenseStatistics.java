@@ -0,0 +1,96 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Spending statistics per category and per month, kept up to date as expenses are written instead of being
+ * recomputed from every row. DatabaseHelper owns the instance: it builds it in one pass over the database and then
+ * feeds it every insert, edit and delete, including those of other instances read from the change log. Used for the median/p90 of a category and to flag unusually large expenses.
+ * Thread safe, the write paths update it from background threads while the table reads it on the FX thread.
+ */
+public class ExpenseStatistics {
+
+    //an expense is flagged once it is this many times the median of its category...
+    private static final double ANOMALY_FACTOR = 3.0;
+    //...and above the category's p99, so wide spread categories are not flagged all the time
+    private static final double ANOMALY_QUANTILE = 0.99;
+    //categories with fewer expenses than this are never flagged, their median means little yet
+    private static final long MIN_SAMPLES = 20;
+
+    private final Map<String, SpendingSummary> byCategory = new TreeMap<>();
+    private final Map<YearMonth, SpendingSummary> byMonth = new TreeMap<>();
+
+    //counts an expense of the given month
+    public synchronized void add(String category, double amount, YearMonth month) {
+        byCategory.computeIfAbsent(category, key -> new SpendingSummary()).add(amount);
+        byMonth.computeIfAbsent(month, key -> new SpendingSummary()).add(amount);
+    }
+
+    public void add(Expense expense) {
+        add(expense.getCategory(), expense.getAmount(), YearMonth.from(expense.getDate()));
+    }
+
+    //takes back an expense of the given month that was counted before (deleted, or the old values of an edited one)
+    public synchronized void remove(String category, double amount, YearMonth month) {
+        remove(byCategory, category, amount);
+        remove(byMonth, month, amount);
+    }
+
+    public void remove(Expense expense) {
+        remove(expense.getCategory(), expense.getAmount(), YearMonth.from(expense.getDate()));
+    }
+
+    //copy of the statistics of a category, empty if it has no expenses
+    public synchronized SpendingSummary getCategory(String category) {
+        return copy(byCategory.get(category));
+    }
+
+    //copy of the statistics of a month over all categories, empty if it has no expenses
+    public synchronized SpendingSummary getMonth(YearMonth month) {
+        return copy(byMonth.get(month));
+    }
+
+    //copies of the statistics of every category, sorted by category
+    public synchronized Map<String, SpendingSummary> getCategories() {
+        Map<String, SpendingSummary> copies = new TreeMap<>();
+        byCategory.forEach((category, summary) -> copies.put(category, copy(summary)));
+        return copies;
+    }
+
+    //how many times the usual (median) amount of its category an expense is, or 0 if it is not unusual
+    public synchronized double anomalyFactor(Expense expense) {
+        SpendingSummary summary = byCategory.get(expense.getCategory());
+        if (summary == null || summary.getCount() < MIN_SAMPLES) {
+            return 0;
+        }
+        double median = summary.getMedian();
+        double amount = expense.getAmount();
+        if (median <= 0 || amount < ANOMALY_FACTOR * median || amount <= summary.getQuantile(ANOMALY_QUANTILE)) {
+            return 0;
+        }
+        return amount / median;
+    }
+
+    private static <K> void remove(Map<K, SpendingSummary> summaries, K key, double amount) {
+        SpendingSummary summary = summaries.get(key);
+        if (summary == null) {
+            return;
+        }
+        summary.remove(amount);
+        if (summary.getCount() <= 0) {
+            summaries.remove(key);
+        }
+    }
+
+    private static SpendingSummary copy(SpendingSummary summary) {
+        SpendingSummary copy = new SpendingSummary();
+        if (summary != null) {
+            copy.merge(summary);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,91 @@
+package com.financeguy;
+
+/**
+ * In-memory bloom filter over expense fingerprints.
+ * Sits in front of the fingerprint index so most new expenses can be ruled out as duplicates without a query.
+ * A "no" answer is always correct, a "maybe" answer still has to be confirmed against the database.
+ */
+public class FingerprintBloomFilter {
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+    //how many fingerprints the filter was sized for and how many it holds
+    private final int capacity;
+    private int size;
+
+    //sizes the filter for the expected number of fingerprints and the wanted false positive rate
+    public FingerprintBloomFilter(int expectedInsertions, double falsePositiveRate) {
+        this.capacity = Math.max(1, expectedInsertions);
+        //standard bloom filter sizing: m = -n ln(p) / (ln 2)^2 and k = m/n ln 2
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.max(64, Math.min(optimalBits, Integer.MAX_VALUE - 63));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+        this.bits = new long[(numBits + 63) / 64];
+    }
+
+    //records a fingerprint as present
+    public void add(String fingerprint) {
+        long h1 = hash1(fingerprint);
+        long h2 = hash2(fingerprint);
+        for (int i = 0; i < numHashes; i++) {
+            int index = index(h1, h2, i);
+            bits[index >>> 6] |= 1L << index;
+        }
+        size++;
+    }
+
+    //returns false if the fingerprint was definitely never added, true if it might have been
+    public boolean mightContain(String fingerprint) {
+        long h1 = hash1(fingerprint);
+        long h2 = hash2(fingerprint);
+        for (int i = 0; i < numHashes; i++) {
+            int index = index(h1, h2, i);
+            if ((bits[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //true once more fingerprints were added than the filter was sized for, the false positive rate climbs after that
+    public boolean isSaturated() {
+        return size > capacity;
+    }
+
+    //number of fingerprints added so far
+    public int size() {
+        return size;
+    }
+
+    //double hashing (h1 + i * h2) to derive every probe position from two base hashes
+    private int index(long h1, long h2, int i) {
+        return (int) Long.remainderUnsigned(h1 + i * h2, numBits);
+    }
+
+    //fingerprints are already uniformly distributed hex digests, so their halves can be used as hashes directly
+    private static long hash1(String fingerprint) {
+        if (fingerprint.length() >= 32) {
+            return Long.parseUnsignedLong(fingerprint.substring(0, 16), 16);
+        }
+        return mix(fingerprint.hashCode());
+    }
+
+    private static long hash2(String fingerprint) {
+        if (fingerprint.length() >= 32) {
+            //forcing the second hash to be odd keeps the probe sequence from collapsing
+            return Long.parseUnsignedLong(fingerprint.substring(16, 32), 16) | 1L;
+        }
+        return mix(fingerprint.hashCode() ^ 0x5bd1e995) | 1L;
+    }
+
+    //64-bit finalizer from MurmurHash3, only used for strings that are not fingerprints
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
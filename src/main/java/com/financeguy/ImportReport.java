@@ -0,0 +1,74 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a bulk import: how many expenses were written and which ones were skipped as duplicates.
+ */
+public class ImportReport {
+
+    private int insertedCount;
+    private final List<Expense> skippedDuplicates = new ArrayList<>();
+    private long elapsedMillis;
+
+    //called by DatabaseHelper for every row that was written
+    void recordInserted() {
+        insertedCount++;
+    }
+
+    //called by DatabaseHelper for every row that matched an existing fingerprint
+    void recordSkipped(Expense expense) {
+        skippedDuplicates.add(expense);
+    }
+
+    //adds the results of another import, used to publish rows once their transaction committed and when a large
+    //import is split into several transactions
+    void addAll(ImportReport other) {
+        insertedCount += other.insertedCount;
+        skippedDuplicates.addAll(other.skippedDuplicates);
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    //number of new rows written to the database
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    //number of rows that were not written because an identical expense already existed
+    public int getSkippedCount() {
+        return skippedDuplicates.size();
+    }
+
+    //the expenses that were skipped, in the order they were offered
+    public List<Expense> getSkippedDuplicates() {
+        return Collections.unmodifiableList(skippedDuplicates);
+    }
+
+    //how long the import took
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    //short human readable summary, also lists the first few skipped rows
+    public String summary(int maxListed) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Imported %d expense(s), skipped %d duplicate(s) in %d ms.",
+                insertedCount, skippedDuplicates.size(), elapsedMillis));
+        int listed = Math.min(maxListed, skippedDuplicates.size());
+        for (int i = 0; i < listed; i++) {
+            Expense e = skippedDuplicates.get(i);
+            sb.append(String.format("%n  %s  %s  $%.2f", e.getDate(), e.getDescription(), e.getAmount()));
+        }
+        if (listed > 0 && skippedDuplicates.size() > listed) {
+            sb.append(String.format("%n  ...and %d more", skippedDuplicates.size() - listed));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.financeguy;
+
+/**
+ * Main class of the packaged jar (see the appcds profile in pom.xml).
+ * The java launcher refuses to start a main class that extends Application unless JavaFX is on the module path.
+ * This one does not extend it, so JavaFX can sit on the class path with the other jars, which class-data sharing needs.
+ */
+public class Launcher {
+
+    public static void main(String[] args) {
+        MainApp.main(args);
+    }
+}
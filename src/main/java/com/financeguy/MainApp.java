@@ -1,25 +1,169 @@
 //Amitoj's Finance Tracker Personal Project
 package com.financeguy;
+import com.financeguy.controller.MainViewController;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 public class MainApp extends Application {
 
+    //set with -Dfinanceguy.exitAfterStartup=true to quit once the first frame is drawn, used by the appcds profile
+    //to record which classes startup loads
+    private static final String EXIT_AFTER_STARTUP_PROPERTY = "financeguy.exitAfterStartup";
+    //with exitAfterStartup the app gives up after this long without a first frame (e.g. a display that never answers)
+    private static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+
+    //measures every phase up to the first frame, started as early as main()
+    private static StartupTimer startupTimer;
+    //System.nanoTime() when JavaFX was asked to start
+    private static long launchStart;
+    //opens the database while JavaFX starts up, completes with the change log position the data is loaded at
+    private static CompletableFuture<Long> databaseReady;
+    //completes once the warm-up thread is done, including the statistics it builds after opening the database
+    private static CompletableFuture<Void> warmUpDone;
+
+    private RecurringExpenseScheduler recurringScheduler;
+    private BackupManager backupManager;
+    private ChangeWatcher changeWatcher;
+
     @Override
     public void start(Stage stage) throws Exception {
-        //creating the expense table if not created
-        DatabaseHelper.initializeDatabase();
+        if (startupTimer == null) {
+            //launched without going through main()
+            startupTimer = new StartupTimer();
+            launchStart = System.nanoTime();
+            startDatabaseWarmUp();
+        }
+        long phaseStart = startupTimer.record("start javafx", launchStart);
+
+        //the view loads its data right away, so the database has to be open. Usually the warm-up is done by now
+        long loadedVersion = databaseReady.join();
+        phaseStart = startupTimer.record("wait for database", phaseStart);
+
         //loading the mainUI layout from MainView.fxml
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/MainView.fxml"));
         //Creating the scene with width: 1200 and height: 800
         Scene scene = new Scene(loader.load(),1200,800);
+        phaseStart = startupTimer.record("load main view", phaseStart);
         stage.setScene(scene);
         stage.setTitle("FinanceGuy");
         stage.show();
+        long showStart = phaseStart;
+        phaseStart = startupTimer.record("show window", phaseStart);
+
+        //the first frame is on screen once the pulse that laid it out has finished rendering
+        CompletableFuture<Void> firstFrame = new CompletableFuture<>();
+        Runnable firstPulse = new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                Platform.runLater(() -> {
+                    startupTimer.record("first frame", showStart);
+                    firstFrame.complete(null);
+                });
+            }
+        };
+        scene.addPostLayoutPulseListener(firstPulse);
+
+        //pick up changes made by other FinanceGuy instances or tools every second, only the changed rows are loaded
+        MainViewController controller = loader.getController();
+        changeWatcher = new ChangeWatcher(loadedVersion, changes -> Platform.runLater(() -> controller.applyChanges(changes)));
+        changeWatcher.start(1, TimeUnit.SECONDS);
+        //the table shows no flags until the warm-up built the statistics, then it is redrawn with them. Rebuilt
+        //statistics (after a clear, restore or a big import elsewhere) may flag other expenses too
+        warmUpDone.thenRun(() -> Platform.runLater(controller::refreshStatistics));
+        DatabaseHelper.setStatisticsListener(() -> Platform.runLater(controller::refreshStatistics));
+
+        //write any recurring expenses that came due while the app was closed, then check again every hour
+        recurringScheduler = new RecurringExpenseScheduler(changeWatcher::pollNow);
+        controller.setRecurringExpenseScheduler(recurringScheduler);
+        recurringScheduler.start(1, TimeUnit.HOURS);
+
+        //online backups into a "backups" folder next to the database: a snapshot a few minutes after startup and then
+        //daily, keeping the last 10. A database elsewhere (tests, the CDS training run) never touches the user's snapshots
+        backupManager = new BackupManager(DatabaseHelper.getDatabasePath().toAbsolutePath().resolveSibling("backups"), 10);
+        controller.setBackupManager(backupManager);
+        backupManager.startScheduledSnapshots(5, 24 * 60, TimeUnit.MINUTES);
+        startupTimer.record("start background jobs", phaseStart);
+
+        CompletableFuture.allOf(firstFrame, warmUpDone).thenRun(() -> {
+            System.out.println(startupTimer.report());
+            if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+                Platform.exit();
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (recurringScheduler != null) {
+            recurringScheduler.stop();
+        }
+        if (backupManager != null) {
+            backupManager.stop();
+        }
+        if (changeWatcher != null) {
+            changeWatcher.stop();
+        }
+    }
+
+    //loads the SQLite driver and opens the database on a background thread, so it overlaps with JavaFX starting up
+    //instead of delaying it. Afterwards builds the statistics the expense table shows flags from
+    private static void startDatabaseWarmUp() {
+        databaseReady = new CompletableFuture<>();
+        warmUpDone = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            long phaseStart = System.nanoTime();
+            try {
+                //the driver unpacks and links SQLite's native library the first time it is loaded
+                Class.forName("org.sqlite.JDBC");
+                phaseStart = startupTimer.record("load sqlite driver", phaseStart);
+                //creating the expense table if not created
+                DatabaseHelper.initializeDatabase();
+                //remember the change log position before the view loads its data, anything newer is picked up by the watcher
+                long version = DatabaseHelper.getLatestChangeVersion();
+                phaseStart = startupTimer.record("open database", phaseStart);
+                databaseReady.complete(version);
+
+                DatabaseHelper.getStatistics();
+                startupTimer.record("build statistics", phaseStart);
+            } catch (ClassNotFoundException | RuntimeException e) {
+                e.printStackTrace();
+                //start() still opens the window, the database calls report their own errors
+                databaseReady.complete(0L);
+            } finally {
+                warmUpDone.complete(null);
+            }
+        }, "database-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //ends a run that should quit after startup if the first frame never comes, with exit code 1
+    private static void startStartupWatchdog() {
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(STARTUP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.err.println("No frame was drawn within " + STARTUP_TIMEOUT_MILLIS / 1000 + " s, giving up");
+            System.exit(1);
+        }, "startup-watchdog");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     public static void main(String[] args) {
+        startupTimer = new StartupTimer();
+        if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+            startStartupWatchdog();
+        }
+        startDatabaseWarmUp();
+        launchStart = System.nanoTime();
         launch(args);
     }
 }
@@ -0,0 +1,119 @@
+package com.financeguy;
+
+import java.util.Arrays;
+
+/**
+ * Approximate quantiles (median, p90...) of a stream of amounts in a few kilobytes, without keeping or sorting them.
+ * Amounts are counted in logarithmic buckets (the DDSketch scheme), so every answer is within a fixed relative error
+ * of a real amount, e.g. 1% of $20 or 1% of $2000. Counts can be taken out again when an expense is edited or
+ * deleted, and two sketches with the same accuracy merge by adding their bucket counts.
+ */
+public class QuantileSketch {
+
+    //amounts below this (zero, refunds) are counted separately and reported as 0
+    private static final double MIN_AMOUNT = 1e-9;
+
+    private final double relativeAccuracy;
+    //bucket i holds amounts in (gamma^(i-1), gamma^i]
+    private final double gamma;
+    private final double logGamma;
+
+    //counts[i] belongs to bucket offset + i, the array only covers the buckets that were used
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+
+    //relativeAccuracy is the largest relative error of a reported quantile, e.g. 0.01 for 1%
+    public QuantileSketch(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    //counts an amount
+    public void add(double amount) {
+        adjust(amount, 1);
+    }
+
+    //takes back an amount that was added before, e.g. because the expense was deleted
+    public void remove(double amount) {
+        adjust(amount, -1);
+    }
+
+    //adds every amount counted by the other sketch, which must have the same accuracy
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Sketches with different accuracy cannot be merged");
+        }
+        if (other.counts.length > 0) {
+            ensureCovers(other.offset);
+            ensureCovers(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset - offset + i] += other.counts[i];
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    //amount below which the given fraction of the amounts lie, e.g. 0.5 for the median. NaN if nothing was counted
+    public double quantile(double q) {
+        if (count <= 0) {
+            return Double.NaN;
+        }
+        //rank of the wanted amount among all counted amounts, 0 based
+        long rank = (long) Math.floor(Math.max(0, Math.min(1, q)) * (count - 1));
+        long seen = zeroCount;
+        if (rank < seen) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (rank < seen) {
+                //the middle of the bucket is within relativeAccuracy of everything in it
+                return 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, offset + counts.length - 1) / (gamma + 1);
+    }
+
+    //number of amounts counted
+    public long getCount() {
+        return count;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    private void adjust(double amount, long delta) {
+        count += delta;
+        if (amount < MIN_AMOUNT) {
+            zeroCount += delta;
+            return;
+        }
+        int index = (int) Math.ceil(Math.log(amount) / logGamma);
+        ensureCovers(index);
+        counts[index - offset] += delta;
+    }
+
+    //grows the bucket array so the given bucket has a slot. Expenses span a few orders of magnitude, so this stays
+    //at a few hundred buckets
+    private void ensureCovers(int index) {
+        if (counts.length == 0) {
+            counts = new long[16];
+            offset = index - 8;
+            return;
+        }
+        if (index < offset) {
+            int grow = Math.max(offset - index, counts.length / 2);
+            long[] grown = new long[counts.length + grow];
+            System.arraycopy(counts, 0, grown, grow, counts.length);
+            counts = grown;
+            offset -= grow;
+        } else if (index >= offset + counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index - offset + 1, counts.length + counts.length / 2));
+        }
+    }
+}
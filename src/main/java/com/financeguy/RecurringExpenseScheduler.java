@@ -0,0 +1,54 @@
+package com.financeguy;
+
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background scheduler that writes due recurring expenses.
+ * Runs once right away (to catch up on anything missed while the app was closed) and then on a fixed timer.
+ */
+public class RecurringExpenseScheduler {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recurring-expense-scheduler");
+        //do not keep the JVM alive once the window is closed
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //called on the scheduler thread after new expenses were written
+    private final Runnable onExpensesAdded;
+
+    public RecurringExpenseScheduler(Runnable onExpensesAdded) {
+        this.onExpensesAdded = onExpensesAdded;
+    }
+
+    //starts the catch-up run now and repeats it every period
+    public void start(long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(this::materializeDue, 0, period, unit);
+    }
+
+    //runs an extra pass as soon as possible, e.g. right after a new rule was added
+    public void runNow() {
+        executor.execute(this::materializeDue);
+    }
+
+    //stops the timer, a pass that is already running is allowed to finish
+    public void stop() {
+        executor.shutdown();
+    }
+
+    private void materializeDue() {
+        //an exception would cancel the fixed delay schedule, so never let one escape
+        try {
+            ImportReport report = DatabaseHelper.materializeRecurringExpenses(LocalDate.now());
+            if (report.getInsertedCount() > 0 && onExpensesAdded != null) {
+                onExpensesAdded.run();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
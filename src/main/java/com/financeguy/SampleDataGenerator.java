@@ -0,0 +1,128 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills the database with large amounts of realistic looking expenses, e.g. to see how the app behaves with years
+ * of history. The same seed and end date always produce the same expenses.
+ * Categories are skewed (food is far more common than education), amounts follow a log-normal spread per category,
+ * and dates lean towards the recent past.
+ * Can be run on its own: SampleDataGenerator count [seed] [years] [endDate]
+ */
+public class SampleDataGenerator {
+
+    //rows written per transaction
+    private static final int CHUNK_SIZE = 100_000;
+
+    //fixed rather than today, so a seed gives the same data no matter when it is run
+    public static final LocalDate DEFAULT_END_DATE = LocalDate.of(2025, 1, 1);
+
+    //one kind of spending: how often it happens relative to the others, the typical amount and how much it varies
+    private static class Category {
+        final String name;
+        final double weight;
+        final double medianAmount;
+        final double spread;
+        final String[] descriptions;
+
+        Category(String name, double weight, double medianAmount, double spread, String... descriptions) {
+            this.name = name;
+            this.weight = weight;
+            this.medianAmount = medianAmount;
+            this.spread = spread;
+            this.descriptions = descriptions;
+        }
+    }
+
+    private static final Category[] CATEGORIES = {
+            new Category("Food", 30, 14, 0.6, "Lunch at cafe", "Coffee", "Dinner out", "Takeout", "Bakery", "Food truck"),
+            new Category("Groceries", 18, 55, 0.5, "Supermarket", "Farmers market", "Corner store", "Bulk store"),
+            new Category("Travel", 14, 22, 0.8, "Taxi ride", "Bus pass", "Gas", "Parking", "Train ticket", "Flight"),
+            new Category("Entertainment", 10, 18, 0.7, "Netflix Bill", "Movie tickets", "Concert", "Video game", "Date Night"),
+            new Category("Shopping", 9, 40, 0.9, "Clothes", "Electronics", "Books", "Home goods", "Gift"),
+            new Category("Utilities", 7, 85, 0.3, "Electricity", "Water", "Internet", "Phone bill"),
+            new Category("Health", 5, 35, 0.8, "Pharmacy", "Gym membership", "Dentist", "Physiotherapy"),
+            new Category("Housing", 4, 1400, 0.15, "Rent", "Home insurance", "Repairs"),
+            new Category("Education", 3, 60, 1.0, "Course fee", "Textbook", "Online class")
+    };
+
+    private final Random random;
+    private final LocalDate endDate;
+    private final int days;
+    private final double totalWeight;
+
+    //expenses will be dated within the given number of years up to endDate
+    public SampleDataGenerator(long seed, LocalDate endDate, int years) {
+        this.random = new Random(seed);
+        this.endDate = endDate;
+        this.days = Math.max(1, (int) (endDate.toEpochDay() - endDate.minusYears(years).toEpochDay()));
+        double weight = 0;
+        for (Category category : CATEGORIES) {
+            weight += category.weight;
+        }
+        this.totalWeight = weight;
+    }
+
+    //builds the next expense
+    public Expense next() {
+        Category category = pickCategory();
+        String description = category.descriptions[random.nextInt(category.descriptions.length)];
+        //log-normal around the category's median, rounded to cents
+        double amount = Math.round(category.medianAmount * Math.exp(category.spread * random.nextGaussian()) * 100) / 100.0;
+        //squaring a uniform value puts more expenses in recent months than in old ones
+        double u = random.nextDouble();
+        LocalDate date = endDate.minusDays((long) (u * u * days));
+        return new Expense(category.name, description, Math.max(0.01, amount), date);
+    }
+
+    //writes count new expenses through the bulk import path, one transaction per chunk. Generated expenses that are
+    //duplicates (of each other or of rows already stored) are skipped by the import, so it keeps generating until
+    //count rows were actually inserted
+    public ImportReport generate(int count) {
+        ImportReport total = new ImportReport();
+        long start = System.currentTimeMillis();
+        while (total.getInsertedCount() < count) {
+            int size = Math.min(CHUNK_SIZE, count - total.getInsertedCount());
+            List<Expense> chunk = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                chunk.add(next());
+            }
+            ImportReport report = DatabaseHelper.importExpenses(chunk);
+            total.addAll(report);
+            if (report.getInsertedCount() + report.getSkippedCount() < size) {
+                //the import failed and printed why, generating more would fail the same way
+                break;
+            }
+        }
+        total.setElapsedMillis(System.currentTimeMillis() - start);
+        return total;
+    }
+
+    private Category pickCategory() {
+        double target = random.nextDouble() * totalWeight;
+        for (Category category : CATEGORIES) {
+            target -= category.weight;
+            if (target < 0) {
+                return category;
+            }
+        }
+        return CATEGORIES[CATEGORIES.length - 1];
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        int years = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        LocalDate endDate = args.length > 3 ? LocalDate.parse(args[3]) : DEFAULT_END_DATE;
+
+        DatabaseHelper.initializeDatabase();
+        ImportReport report = new SampleDataGenerator(seed, endDate, years).generate(count);
+        System.out.println(report.summary(0));
+        System.out.printf("%.0f rows/s%n", report.getInsertedCount() / Math.max(0.001, report.getElapsedMillis() / 1000.0));
+    }
+}
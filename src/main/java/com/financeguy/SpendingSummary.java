@@ -0,0 +1,86 @@
+package com.financeguy;
+
+/**
+ * Running statistics of a group of expenses (a category or a month): count, mean, variance and quantiles.
+ * Mean and variance are kept with Welford's method, so they are exact and numerically stable without storing amounts.
+ * Amounts can be added and taken out again, and summaries of disjoint groups merge into the summary of both.
+ */
+public class SpendingSummary {
+
+    //1% is finer than anyone reads a median of expenses
+    static final double SKETCH_ACCURACY = 0.01;
+
+    private long count;
+    private double mean;
+    //sum of squared differences from the mean
+    private double m2;
+    private final QuantileSketch sketch = new QuantileSketch(SKETCH_ACCURACY);
+
+    //counts an expense amount
+    public void add(double amount) {
+        count++;
+        double delta = amount - mean;
+        mean += delta / count;
+        m2 += delta * (amount - mean);
+        sketch.add(amount);
+    }
+
+    //takes back an amount that was added before, Welford's update run backwards
+    public void remove(double amount) {
+        if (count <= 1) {
+            count = 0;
+            mean = 0;
+            m2 = 0;
+        } else {
+            double previousMean = (count * mean - amount) / (count - 1);
+            m2 -= (amount - mean) * (amount - previousMean);
+            mean = previousMean;
+            count--;
+            //rounding can push it slightly below zero after many removals
+            m2 = Math.max(0, m2);
+        }
+        sketch.remove(amount);
+    }
+
+    //adds the expenses of another summary (Chan's parallel variance formula)
+    public void merge(SpendingSummary other) {
+        if (other.count > 0) {
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            mean += delta * other.count / total;
+            count = total;
+        }
+        sketch.merge(other.sketch);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getTotal() {
+        return mean * count;
+    }
+
+    //sample variance, 0 until there are two amounts
+    public double getVariance() {
+        return count > 1 ? m2 / (count - 1) : 0;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMedian() {
+        return sketch.quantile(0.5);
+    }
+
+    //approximate amount below which the given fraction of amounts lie, e.g. 0.9 for p90
+    public double getQuantile(double q) {
+        return sketch.quantile(q);
+    }
+}
@@ -0,0 +1,75 @@
+package com.financeguy;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects how long each phase of startup took and prints them as one report once the first frame is drawn.
+ * Phases can be recorded from any thread, so work moved to the background shows up next to the phases it overlaps.
+ * Times are measured from when the JVM process started, which also shows the cost of the JVM itself (the part
+ * class-data sharing cuts, see the appcds profile in pom.xml).
+ */
+public final class StartupTimer {
+
+    //one recorded phase, in nanoseconds since the JVM process started
+    private static class Phase {
+        final String name;
+        final String thread;
+        final long start;
+        final long end;
+
+        Phase(String name, String thread, long start, long end) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    //System.nanoTime() at the moment the JVM process was started
+    private final long processStart;
+    private final List<Phase> phases = new ArrayList<>();
+
+    public StartupTimer() {
+        long now = System.nanoTime();
+        //the OS knows when the process started, nanoTime has no fixed origin so the difference is converted
+        long sinceProcessStart = ProcessHandle.current().info().startInstant()
+                .map(start -> Math.max(0, Instant.now().toEpochMilli() - start.toEpochMilli()) * 1_000_000)
+                .orElse(0L);
+        this.processStart = now - sinceProcessStart;
+        record("jvm startup", processStart);
+    }
+
+    //records a phase that started at the given System.nanoTime() and ends now, returns now so the next phase can start there
+    public long record(String name, long startNanos) {
+        long now = System.nanoTime();
+        synchronized (phases) {
+            phases.add(new Phase(name, Thread.currentThread().getName(), startNanos - processStart, now - processStart));
+        }
+        return now;
+    }
+
+    //the report: every phase with when it started, how long it took and on which thread, in the order they started
+    public String report() {
+        List<Phase> sorted;
+        synchronized (phases) {
+            sorted = new ArrayList<>(phases);
+        }
+        sorted.sort((a, b) -> Long.compare(a.start, b.start));
+        long total = 0;
+        StringBuilder sb = new StringBuilder("Startup timing (ms since process start):");
+        sb.append(String.format("%n  %-24s %8s %8s  %s", "phase", "start", "took", "thread"));
+        for (Phase phase : sorted) {
+            sb.append(String.format("%n  %-24s %8.1f %8.1f  %s", phase.name, millis(phase.start),
+                    millis(phase.end - phase.start), phase.thread));
+            total = Math.max(total, phase.end);
+        }
+        sb.append(String.format("%n  %-24s %8s %8.1f", "total", "", millis(total)));
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -1,6 +1,18 @@
 package com.financeguy.controller;
+import com.financeguy.BackupManager;
+import com.financeguy.BackupReport;
 import com.financeguy.DatabaseHelper;
+import com.financeguy.ExpenseChanges;
+import com.financeguy.ExpenseCsvReader;
+import com.financeguy.ExpenseStatistics;
+import com.financeguy.ImportReport;
+import com.financeguy.RecurringExpenseScheduler;
+import com.financeguy.SampleDataGenerator;
+import com.financeguy.SpendingSummary;
 import com.financeguy.model.Expense;
+import com.financeguy.model.RecurringExpense;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -8,11 +20,20 @@ import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.chart.PieChart;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +51,8 @@ public class MainViewController {
     @FXML
     private TableColumn<Expense, LocalDate> dateColumn;
     @FXML
+    private TableColumn<Expense, Double> anomalyColumn;
+    @FXML
     private PieChart expensePieChart;
     @FXML
     private Label totalAmountLabel;
@@ -43,6 +66,15 @@ public class MainViewController {
     //Model for the displayed expenses
     private ObservableList<Expense> expenseData = FXCollections.observableArrayList();
 
+    //writes recurring expenses in the background, set by MainApp once the view is loaded
+    private RecurringExpenseScheduler recurringScheduler;
+
+    //takes and restores database backups in the background, set by MainApp once the view is loaded
+    private BackupManager backupManager;
+
+    //add/edit dialog, created on first use
+    private ExpenseDialog expenseDialog;
+
     //Sets up table columns, loads data and initializes filters and the chart.
     @FXML
     private void initialize() {
@@ -51,6 +83,13 @@ public class MainViewController {
         descriptionColumn.setCellValueFactory(cellData -> cellData.getValue().descriptionProperty());
         amountColumn.setCellValueFactory(cellData -> cellData.getValue().amountProperty().asObject());
         dateColumn.setCellValueFactory(cellData -> cellData.getValue().dateProperty());
+        //how many times its category's usual amount an expense is, 0 for ordinary expenses. Nothing is flagged until
+        //the statistics are built in the background, the table is refreshed then
+        anomalyColumn.setCellValueFactory(cellData -> {
+            ExpenseStatistics statistics = DatabaseHelper.getStatisticsIfBuilt();
+            return new ReadOnlyObjectWrapper<>(statistics == null ? 0.0 : statistics.anomalyFactor(cellData.getValue()));
+        });
+        anomalyColumn.setCellFactory(column -> new AnomalyCell());
 
         //load the expenses from the database
         loadExpensesFromDatabase();
@@ -68,6 +107,84 @@ public class MainViewController {
 
 
 
+    //gives the controller the scheduler so new rules can be materialized right away
+    public void setRecurringExpenseScheduler(RecurringExpenseScheduler recurringScheduler) {
+        this.recurringScheduler = recurringScheduler;
+    }
+
+    //gives the controller the backup manager used by the backup, restore and clear actions
+    public void setBackupManager(BackupManager backupManager) {
+        this.backupManager = backupManager;
+    }
+
+    //redraws the flags column, e.g. once rebuilt statistics were swapped in
+    public void refreshStatistics() {
+        expenseTable.refresh();
+    }
+
+    //reloads everything from the database, used when expenses were written outside of this view (e.g. by the scheduler)
+    public void refreshExpenses() {
+        loadExpensesFromDatabase();
+        initializeCategoryFilter();
+        updatePieChart();
+        updateTotalAmount();
+    }
+
+    //applies changes made by another instance (or a background job) without reloading everything.
+    //only the changed rows are touched, rows that no longer match the current filter are dropped
+    public void applyChanges(ExpenseChanges changes) {
+        if (changes.isReloadAll()) {
+            //the statistics follow the change log by themselves and are rebuilt in the background if needed
+            refreshExpenses();
+            return;
+        }
+
+        //where each displayed expense sits in the table
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < expenseData.size(); i++) {
+            positions.put(expenseData.get(i).getId(), i);
+        }
+
+        Set<Integer> toRemove = new HashSet<>(changes.getDeletedIds());
+        for (Expense changed : changes.getUpserted()) {
+            Integer position = positions.get(changed.getId());
+            if (!matchesCurrentFilter(changed)) {
+                toRemove.add(changed.getId());
+            } else if (position != null) {
+                expenseData.set(position, changed);
+            } else {
+                expenseData.add(changed);
+            }
+
+            //a new category shows up in the filter without resetting the current selection
+            String displayCategory = capitalizeFirstLetter(changed.getCategory());
+            if (!categoryFilter.getItems().contains(displayCategory)) {
+                categoryFilter.getItems().add(displayCategory);
+            }
+        }
+        if (!toRemove.isEmpty()) {
+            expenseData.removeIf(e -> toRemove.contains(e.getId()));
+        }
+
+        updatePieChart();
+        updateTotalAmount();
+        //the statistics moved with the changes, so flags on rows that were not touched may have changed too
+        expenseTable.refresh();
+    }
+
+    //true if the expense belongs in the table with the category and dates picked in the toolbar
+    private boolean matchesCurrentFilter(Expense expense) {
+        String selectedCategory = categoryFilter.getValue();
+        if (selectedCategory != null && !selectedCategory.isEmpty() && !selectedCategory.equals("All")
+                && !expense.getCategory().equals(selectedCategory.toLowerCase())) {
+            return false;
+        }
+        LocalDate startDate = startDatePicker.getValue();
+        LocalDate endDate = endDatePicker.getValue();
+        return (startDate == null || !expense.getDate().isBefore(startDate))
+                && (endDate == null || !expense.getDate().isAfter(endDate));
+    }
+
      //loads expenses from the database into the expense data list.
     private void loadExpensesFromDatabase() {
         expenseData.clear();
@@ -76,11 +193,8 @@ public class MainViewController {
 
     //collects different categories from the database for users to filter through
     private void initializeCategoryFilter() {
-        //get a set of distinct and normalized categories from all expenses
-        List<String> distinctCategories = DatabaseHelper.getAllExpenses().stream()
-                .map(Expense::getCategory)
-                .distinct()
-                .collect(Collectors.toList());
+        //get the distinct and normalized categories, summed up by the database instead of loading every expense again
+        List<String> distinctCategories = new ArrayList<>(DatabaseHelper.getCategoryTotals(null, null).keySet());
 
         //capitalize the first letter
         List<String> displayCategories = distinctCategories.stream()
@@ -124,6 +238,28 @@ public class MainViewController {
         totalAmountLabel.setText(String.format("Total Expenses: $%.2f", total));
     }
 
+    //shows a warning next to expenses that are far above what is usual for their category, with the category's
+    //statistics in a tooltip
+    private class AnomalyCell extends TableCell<Expense, Double> {
+        @Override
+        protected void updateItem(Double factor, boolean empty) {
+            super.updateItem(factor, empty);
+            ExpenseStatistics statistics = DatabaseHelper.getStatisticsIfBuilt();
+            if (empty || factor == null || factor <= 0 || statistics == null || getTableRow() == null
+                    || getTableRow().getItem() == null) {
+                setText(null);
+                setTooltip(null);
+                return;
+            }
+            String category = getTableRow().getItem().getCategory();
+            SpendingSummary summary = statistics.getCategory(category);
+            setText(String.format("\u26A0 %.1fx usual", factor));
+            setTooltip(new Tooltip(String.format("Usual %s expense: median $%.2f, p90 $%.2f, mean $%.2f (%,d expenses)",
+                    capitalizeFirstLetter(category), summary.getMedian(), summary.getQuantile(0.9),
+                    summary.getMean(), summary.getCount())));
+        }
+    }
+
     //capitalizes the first letter of a string. for aesthetic purposes
     private String capitalizeFirstLetter(String str) {
         if (str == null || str.isEmpty()) return str;
@@ -135,43 +271,156 @@ public class MainViewController {
     private void handleAddExpense() {
         //opens the user input dialog and will return a new expense if successful or nothing if it is canceled
         Expense newExpense = showExpenseDialog(null);
-        if (newExpense != null) {
-            //add the new expense to the database
-            DatabaseHelper.addExpense(newExpense);
-            //refreshes the UI and updates the components
-            loadExpensesFromDatabase();
-            initializeCategoryFilter();
-            updatePieChart();
-            updateTotalAmount();
+        if (newExpense == null || addExpense(newExpense)) {
+            return;
+        }
+        if (!DatabaseHelper.hasIdenticalExpense(newExpense)) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Add Failed", "The expense could not be saved.");
+            return;
+        }
+        //the same purchase twice on one day is legitimate (two coffees), so the user decides
+        ButtonType addAnywayButtonType = new ButtonType("Add Anyway", ButtonBar.ButtonData.OK_DONE);
+        Alert duplicateAlert = new Alert(Alert.AlertType.CONFIRMATION, null, addAnywayButtonType, ButtonType.CANCEL);
+        duplicateAlert.setTitle("Duplicate Expense");
+        duplicateAlert.setHeaderText("An expense with the same date, amount and description already exists.");
+        duplicateAlert.setContentText("Add this one as well?");
+        Optional<ButtonType> result = duplicateAlert.showAndWait();
+        if (result.isPresent() && result.get() == addAnywayButtonType && !addExpense(newExpense, true)) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Add Failed", "The expense could not be saved.");
         }
     }
 
+    //adds an expense and refreshes the view, returns false if it was a duplicate and not added.
+    //public so the responsiveness harness can run the action without going through the dialog
+    public boolean addExpense(Expense newExpense) {
+        return addExpense(newExpense, false);
+    }
+
+    //same, with allowDuplicate the expense is added even if an identical one exists
+    private boolean addExpense(Expense newExpense, boolean allowDuplicate) {
+        //add the new expense to the database, identical expenses are only added twice when the user said so
+        if (!DatabaseHelper.addExpense(newExpense, allowDuplicate)) {
+            return false;
+        }
+        //refreshes the UI and updates the components
+        loadExpensesFromDatabase();
+        initializeCategoryFilter();
+        updatePieChart();
+        updateTotalAmount();
+        return true;
+    }
+
     //method that helps with adding/editing expenses using a dialog
     private Expense showExpenseDialog(Expense existingExpense) {
-        Dialog<Expense> dialog = new Dialog<>();
+        //built the first time it is needed instead of during startup, then kept for every later add or edit
+        if (expenseDialog == null) {
+            expenseDialog = new ExpenseDialog();
+        }
+        return expenseDialog.show(existingExpense);
+    }
 
-        if (existingExpense == null) {
-            dialog.setTitle("Add Expense");
-        } else {
-            dialog.setTitle("Edit Expense");
+    //the add/edit expense dialog. Building the controls (the DatePicker especially) costs more than showing them,
+    //so one instance is reused and only its fields are reset before each use
+    private class ExpenseDialog {
+        private final Dialog<Expense> dialog = new Dialog<>();
+        private final ButtonType submitButtonType = new ButtonType("Submit", ButtonBar.ButtonData.OK_DONE);
+        //creating text fields for the category, description, amount and date
+        private final TextField categoryField = new TextField();
+        private final TextField descriptionField = new TextField();
+        private final TextField amountField = new TextField();
+        private final DatePicker datePicker = new DatePicker();
+        //the expense being edited, null when adding
+        private Expense existingExpense;
+
+        ExpenseDialog() {
+            dialog.getDialogPane().getButtonTypes().addAll(submitButtonType, ButtonType.CANCEL);
+
+            GridPane grid = new GridPane();
+            grid.setHgap(10);
+            grid.setVgap(10);
+            grid.setPadding(new Insets(20, 150, 10, 10));
+
+            grid.add(new Label("Category:"), 0, 0);
+            grid.add(categoryField, 1, 0);
+            grid.add(new Label("Description:"), 0, 1);
+            grid.add(descriptionField, 1, 1);
+            grid.add(new Label("Amount:"), 0, 2);
+            grid.add(amountField, 1, 2);
+            grid.add(new Label("Date:"), 0, 3);
+            grid.add(datePicker, 1, 3);
+
+            dialog.getDialogPane().setContent(grid);
+
+            //convert result to an expense
+            dialog.setResultConverter(dialogButton -> {
+                if (dialogButton == submitButtonType) {
+                    String category = categoryField.getText();
+                    String description = descriptionField.getText();
+                    double amount;
+                    try {
+                        amount = Double.parseDouble(amountField.getText());
+                    } catch (NumberFormatException e) {
+                        showAlert(Alert.AlertType.ERROR, "Invalid Amount", null, "Please enter a valid number for the amount.");
+                        return null;
+                    }
+                    LocalDate date = datePicker.getValue();
+
+                    //if we are adding a new expense
+                    if (existingExpense == null) {
+                        return new Expense(category, description, amount, date);
+                    } else {
+                        //if we are editing, preserve the expense’s ID
+                        return new Expense(existingExpense.getId(), category, description, amount, date);
+                    }
+                }
+                return null;
+            });
+        }
+
+        //resets the fields (pre-filled when editing) and waits for the user, returns null if canceled
+        Expense show(Expense existingExpense) {
+            this.existingExpense = existingExpense;
+            if (existingExpense == null) {
+                dialog.setTitle("Add Expense");
+                categoryField.clear();
+                descriptionField.clear();
+                amountField.clear();
+                datePicker.setValue(LocalDate.now());
+            } else {
+                dialog.setTitle("Edit Expense");
+                categoryField.setText(existingExpense.getCategory());
+                descriptionField.setText(existingExpense.getDescription());
+                amountField.setText(String.valueOf(existingExpense.getAmount()));
+                datePicker.setValue(existingExpense.getDate());
+            }
+            Platform.runLater(categoryField::requestFocus);
+
+            Optional<Expense> result = dialog.showAndWait();
+            return result.orElse(null);
         }
+    }
+
+
+
+    //handles Edit > Add Recurring Expense. Stores a rule such as monthly rent, its occurrences are written in the background
+    @FXML
+    private void handleAddRecurringExpense() {
+        Dialog<RecurringExpense> dialog = new Dialog<>();
+        dialog.setTitle("Add Recurring Expense");
 
         ButtonType submitButtonType = new ButtonType("Submit", ButtonBar.ButtonData.OK_DONE);
         dialog.getDialogPane().getButtonTypes().addAll(submitButtonType, ButtonType.CANCEL);
 
-        //creating text fields for the category, description, amount and date
+        //creating input fields for the rule
         TextField categoryField = new TextField();
         TextField descriptionField = new TextField();
         TextField amountField = new TextField();
-        DatePicker datePicker = new DatePicker(LocalDate.now());
-
-        //if editing an existing expense then we can pre-fill the fields
-        if (existingExpense != null) {
-            categoryField.setText(existingExpense.getCategory());
-            descriptionField.setText(existingExpense.getDescription());
-            amountField.setText(String.valueOf(existingExpense.getAmount()));
-            datePicker.setValue(existingExpense.getDate());
-        }
+        ComboBox<RecurringExpense.Frequency> frequencyBox = new ComboBox<>(
+                FXCollections.observableArrayList(RecurringExpense.Frequency.values()));
+        frequencyBox.setValue(RecurringExpense.Frequency.MONTHLY);
+        DatePicker startDatePicker = new DatePicker(LocalDate.now());
+        //the end date is optional, leaving it empty means the rule repeats forever
+        DatePicker endDatePicker = new DatePicker();
 
         GridPane grid = new GridPane();
         grid.setHgap(10);
@@ -184,16 +433,18 @@ public class MainViewController {
         grid.add(descriptionField, 1, 1);
         grid.add(new Label("Amount:"), 0, 2);
         grid.add(amountField, 1, 2);
-        grid.add(new Label("Date:"), 0, 3);
-        grid.add(datePicker, 1, 3);
+        grid.add(new Label("Repeats:"), 0, 3);
+        grid.add(frequencyBox, 1, 3);
+        grid.add(new Label("First Date:"), 0, 4);
+        grid.add(startDatePicker, 1, 4);
+        grid.add(new Label("Last Date (optional):"), 0, 5);
+        grid.add(endDatePicker, 1, 5);
 
         dialog.getDialogPane().setContent(grid);
 
-        //convert result to an expense
+        //convert result to a recurring expense rule
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == submitButtonType) {
-                String category = categoryField.getText();
-                String description = descriptionField.getText();
                 double amount;
                 try {
                     amount = Double.parseDouble(amountField.getText());
@@ -201,24 +452,77 @@ public class MainViewController {
                     showAlert(Alert.AlertType.ERROR, "Invalid Amount", null, "Please enter a valid number for the amount.");
                     return null;
                 }
-                LocalDate date = datePicker.getValue();
-
-                //if we are adding a new expense
-                if (existingExpense == null) {
-                    return new Expense(category, description, amount, date);
-                } else {
-                    //if we are editing, preserve the expense’s ID
-                    return new Expense(existingExpense.getId(), category, description, amount, date);
+                if (categoryField.getText().isEmpty() || amount <= 0 || startDatePicker.getValue() == null) {
+                    showAlert(Alert.AlertType.ERROR, "Invalid Input", null, "Please fill all fields correctly.");
+                    return null;
                 }
+                return new RecurringExpense(categoryField.getText(), descriptionField.getText(), amount,
+                        frequencyBox.getValue(), startDatePicker.getValue(), endDatePicker.getValue());
             }
             return null;
         });
 
-        Optional<Expense> result = dialog.showAndWait();
-        return result.orElse(null);
+        Optional<RecurringExpense> result = dialog.showAndWait();
+        if (result.isPresent()) {
+            DatabaseHelper.addRecurringExpense(result.get());
+            //a first date in the past is caught up right away, the scheduler refreshes the view when done
+            if (recurringScheduler != null) {
+                recurringScheduler.runNow();
+            }
+        }
     }
 
+    //handles Edit > Manage Recurring Expenses. Lists the rules so one can be ended (e.g. a cancelled subscription)
+    //or deleted. Expenses a rule already wrote stay either way
+    @FXML
+    private void handleManageRecurringExpenses() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Recurring Expenses");
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        ListView<RecurringExpense> ruleList = new ListView<>(
+                FXCollections.observableArrayList(DatabaseHelper.getAllRecurringExpenses()));
+        ruleList.setPrefSize(560, 260);
+        ruleList.setPlaceholder(new Label("No recurring expenses."));
+        ruleList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(RecurringExpense rule, boolean empty) {
+                super.updateItem(rule, empty);
+                if (empty || rule == null) {
+                    setText(null);
+                    return;
+                }
+                String until = rule.getEndDate() == null ? "" : " until " + rule.getEndDate();
+                setText(String.format("%s (%s): $%.2f %s from %s%s", rule.getDescription(),
+                        capitalizeFirstLetter(rule.getCategory()), rule.getAmount(),
+                        rule.getFrequency().name().toLowerCase(), rule.getStartDate(), until));
+            }
+        });
 
+        Button endButton = new Button("End Today");
+        endButton.setOnAction(event -> {
+            RecurringExpense rule = ruleList.getSelectionModel().getSelectedItem();
+            if (rule != null) {
+                DatabaseHelper.endRecurringExpense(rule.getId(), LocalDate.now());
+                ruleList.getItems().setAll(DatabaseHelper.getAllRecurringExpenses());
+            }
+        });
+        Button deleteButton = new Button("Delete");
+        deleteButton.setOnAction(event -> {
+            RecurringExpense rule = ruleList.getSelectionModel().getSelectedItem();
+            if (rule != null) {
+                DatabaseHelper.deleteRecurringExpense(rule.getId());
+                ruleList.getItems().setAll(DatabaseHelper.getAllRecurringExpenses());
+            }
+        });
+        endButton.disableProperty().bind(ruleList.getSelectionModel().selectedItemProperty().isNull());
+        deleteButton.disableProperty().bind(ruleList.getSelectionModel().selectedItemProperty().isNull());
+
+        VBox content = new VBox(10, ruleList, new HBox(10, endButton, deleteButton));
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.showAndWait();
+    }
 
    //handles the edit expense button
     @FXML
@@ -261,15 +565,80 @@ public class MainViewController {
 
         Optional<ButtonType> result = confirmationAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            //delete the expense by ID
-            DatabaseHelper.deleteExpense(selectedExpense.getId());
-            loadExpensesFromDatabase();
-            initializeCategoryFilter();
-            updatePieChart();
-            updateTotalAmount();
+            deleteExpense(selectedExpense);
         }
     }
 
+    //deletes an expense and refreshes the view, public for the responsiveness harness
+    public void deleteExpense(Expense expense) {
+        //delete the expense by ID
+        DatabaseHelper.deleteExpense(expense.getId());
+        loadExpensesFromDatabase();
+        initializeCategoryFilter();
+        updatePieChart();
+        updateTotalAmount();
+    }
+
+    //handles File > Import CSV. Imports a bank export and reports which rows were skipped as duplicates
+    @FXML
+    private void handleImportExpenses() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Expenses");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files (date, category, description, amount)", "*.csv"));
+        File file = fileChooser.showOpenDialog(expenseTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        List<Expense> expenses;
+        try {
+            expenses = ExpenseCsvReader.read(file.toPath());
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Import Failed", "Could not read " + file.getName() + ".");
+            return;
+        }
+
+        //write everything in one go, duplicates are skipped and listed in the report
+        ImportReport report = DatabaseHelper.importExpenses(expenses);
+        loadExpensesFromDatabase();
+        initializeCategoryFilter();
+        updatePieChart();
+        updateTotalAmount();
+
+        showAlert(Alert.AlertType.INFORMATION, "Import Complete", null, report.summary(10));
+    }
+
+    //handles File > Generate Test Data. Fills the database with many realistic expenses to try the app at scale
+    @FXML
+    private void handleGenerateTestData() {
+        TextInputDialog countDialog = new TextInputDialog("100000");
+        countDialog.setTitle("Generate Test Data");
+        countDialog.setHeaderText("How many expenses should be generated?");
+        countDialog.setContentText("Count:");
+        Optional<String> answer = countDialog.showAndWait();
+        if (answer.isEmpty()) {
+            return;
+        }
+        int count;
+        try {
+            count = Integer.parseInt(answer.get().trim());
+        } catch (NumberFormatException e) {
+            showAlert(Alert.AlertType.ERROR, "Invalid Count", null, "Please enter a whole number.");
+            return;
+        }
+
+        //generating millions of rows takes a while, keep it off the FX thread
+        Thread generator = new Thread(() -> {
+            ImportReport report = new SampleDataGenerator(42, SampleDataGenerator.DEFAULT_END_DATE, 10).generate(count);
+            Platform.runLater(() -> {
+                refreshExpenses();
+                showAlert(Alert.AlertType.INFORMATION, "Test Data Generated", null, report.summary(0));
+            });
+        }, "test-data-generator");
+        generator.setDaemon(true);
+        generator.start();
+    }
+
    //handles when we click Load Sample Data under the file section
     @FXML
     private void handleLoadSampleData() {
@@ -282,16 +651,25 @@ public class MainViewController {
 
         Optional<ButtonType> result = confirmationAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            //load the sample data
-            DatabaseHelper.insertSampleData();
+            //load the sample data, expenses that are already there are not added again
+            ImportReport report = DatabaseHelper.insertSampleData();
             //refresh the data in the table and charts and update UI components
             loadExpensesFromDatabase();
             initializeCategoryFilter();
             updatePieChart();
             updateTotalAmount();
 
-            //inform the user the data has been loaded
-            showAlert(Alert.AlertType.INFORMATION, "Sample Data Loaded", null, "Sample data has been loaded successfully.");
+            //inform the user what was loaded
+            if (report.getInsertedCount() == 0 && report.getSkippedCount() == 0) {
+                showAlert(Alert.AlertType.ERROR, "Error", "Load Failed", "The sample data could not be saved.");
+            } else if (report.getInsertedCount() == 0) {
+                showAlert(Alert.AlertType.INFORMATION, "Sample Data Loaded", null,
+                        "The sample expenses are already in your data, nothing was added.");
+            } else if (report.getSkippedCount() > 0) {
+                showAlert(Alert.AlertType.INFORMATION, "Sample Data Loaded", null, report.summary(0));
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Sample Data Loaded", null, "Sample data has been loaded successfully.");
+            }
         }
     }
 
@@ -302,26 +680,102 @@ public class MainViewController {
         //confirm with the user before we clear all existing data
         Alert confirmationAlert = new Alert(Alert.AlertType.CONFIRMATION);
         confirmationAlert.setTitle("Clear All Data");
-        confirmationAlert.setHeaderText("Are you sure you want to clear all data?");
-        confirmationAlert.setContentText("This action cannot be undone.");
+        confirmationAlert.setHeaderText("Are you sure you want to clear all expenses and recurring expenses?");
+        if (backupManager != null) {
+            confirmationAlert.setContentText("A backup is saved first, it can be brought back with File > Restore Backup.");
+        } else {
+            confirmationAlert.setContentText("This action cannot be undone.");
+        }
 
         Optional<ButtonType> result = confirmationAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            //clear all the data from the database
-            boolean success = DatabaseHelper.clearDatabase();
-            if (success) {
-                //refresh and update the UI
-                loadExpensesFromDatabase();
-                initializeCategoryFilter();
-                updatePieChart();
-                updateTotalAmount();
-
-                //inform the user the data has been cleared
-                showAlert(Alert.AlertType.INFORMATION, "Data Cleared", null, "All expense data has been cleared.");
+            if (backupManager == null) {
+                clearAllData(null);
+                return;
+            }
+            //take the backup in the background and only clear once it is safely written
+            backupManager.snapshotAsync().whenComplete((report, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "Error", "Backup Failed",
+                            "The data was not cleared because the backup could not be saved.");
+                    return;
+                }
+                clearAllData(report);
+            }));
+        }
+    }
+
+    //clears the database and refreshes the UI, backup is the snapshot taken beforehand (may be null)
+    private void clearAllData(BackupReport backup) {
+        //clear all the data from the database
+        boolean success = DatabaseHelper.clearDatabase();
+        if (success) {
+            //refresh and update the UI
+            loadExpensesFromDatabase();
+            initializeCategoryFilter();
+            updatePieChart();
+            updateTotalAmount();
+
+            //inform the user the data has been cleared
+            String message = "All expense data has been cleared.";
+            if (backup != null) {
+                message += " A backup was saved as " + backup.getFile().getFileName() + ".";
+            }
+            showAlert(Alert.AlertType.INFORMATION, "Data Cleared", null, message);
+        } else {
+            //in the case of failure, inform the user of the failure
+            showAlert(Alert.AlertType.ERROR, "Error", "Data Clearing Failed", "There was an error clearing the expense data.");
+        }
+    }
+
+    //handles File > Back Up Now. The copy runs in the background, the user is told when it is done
+    @FXML
+    private void handleBackupNow() {
+        if (backupManager == null) {
+            return;
+        }
+        backupManager.snapshotAsync().whenComplete((report, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Error", "Backup Failed", "The backup could not be saved.");
             } else {
-                //in the case of failure, inform the user of the failure
-                showAlert(Alert.AlertType.ERROR, "Error", "Data Clearing Failed", "There was an error clearing the expense data.");
+                showAlert(Alert.AlertType.INFORMATION, "Backup Saved", null, report.summary());
             }
+        }));
+    }
+
+    //handles File > Restore Backup. Replaces all current data with a snapshot picked by the user
+    @FXML
+    private void handleRestoreBackup() {
+        if (backupManager == null) {
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Restore Backup");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("FinanceGuy Backups", "*.db"));
+        File backupDirectory = backupManager.getBackupDirectory().toFile();
+        if (backupDirectory.isDirectory()) {
+            fileChooser.setInitialDirectory(backupDirectory);
+        }
+        File file = fileChooser.showOpenDialog(expenseTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        Alert confirmationAlert = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmationAlert.setTitle("Restore Backup");
+        confirmationAlert.setHeaderText("Replace all current data with " + file.getName() + "?");
+        confirmationAlert.setContentText("Take a backup first if you want to keep the current data.");
+        Optional<ButtonType> result = confirmationAlert.showAndWait();
+        if (result.isPresent() && result.get() == ButtonType.OK) {
+            backupManager.restoreAsync(file.toPath()).whenComplete((report, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "Error", "Restore Failed", error.getCause() != null
+                            ? error.getCause().getMessage() : error.getMessage());
+                    return;
+                }
+                refreshExpenses();
+                showAlert(Alert.AlertType.INFORMATION, "Backup Restored", null, report.summary());
+            }));
         }
     }
 
@@ -356,27 +810,23 @@ public class MainViewController {
         LocalDate startDate = startDatePicker.getValue();
         LocalDate endDate = endDatePicker.getValue();
 
-        //get all the expenses from Data Base
-        ObservableList<Expense> allExpenses = FXCollections.observableArrayList(DatabaseHelper.getAllExpenses());
-
         //filtering by category with an exception to if “All” is selected
+        String normalizedCategory = null;
         if (selectedCategory != null && !selectedCategory.isEmpty() && !selectedCategory.equals("All")) {
-            String normalizedCategory = selectedCategory.toLowerCase();
-            allExpenses = allExpenses.filtered(e -> e.getCategory().equals(normalizedCategory));
+            normalizedCategory = selectedCategory.toLowerCase();
         }
 
-        //filtering by the start date
-        if (startDate != null) {
-            allExpenses = allExpenses.filtered(e -> !e.getDate().isBefore(startDate));
-        }
+        applyFilter(normalizedCategory, startDate, endDate);
+    }
 
-        //filtering by the end date
-        if (endDate != null) {
-            allExpenses = allExpenses.filtered(e -> !e.getDate().isAfter(endDate));
-        }
+    //shows the expenses of a normalized category (null for all) between two dates (either may be null).
+    //public for the responsiveness harness
+    public void applyFilter(String category, LocalDate startDate, LocalDate endDate) {
+        //let the database do the category and date filtering, so years outside the range are never read
+        List<Expense> filteredExpenses = DatabaseHelper.getExpenses(category, startDate, endDate);
 
         //update the expense data with the final filtered options
-        expenseData.setAll(allExpenses);
+        expenseData.setAll(filteredExpenses);
 
         updatePieChart();
         updateTotalAmount();
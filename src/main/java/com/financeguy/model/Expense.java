@@ -1,6 +1,10 @@
 package com.financeguy.model;
 import javafx.beans.property.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
+import java.util.HexFormat;
 
 //class that manages an individual expense entry
 public class Expense {
@@ -39,6 +43,27 @@ public class Expense {
         return category.trim().toLowerCase();
     }
 
+    //builds a content fingerprint from the date, amount and normalized description.
+    //two expenses with the same fingerprint are treated as duplicates (e.g. the same row from overlapping bank statements)
+    public String getFingerprint() {
+        return fingerprint(getDescription(), getAmount(), getDate());
+    }
+
+    //fingerprint helper that works on raw column values so rows can be fingerprinted without building an Expense
+    public static String fingerprint(String description, double amount, LocalDate date) {
+        //amount is compared in cents so 12.5 and 12.50 match, description ignores case and extra whitespace
+        String normalizedDescription = description == null ? "" : description.trim().replaceAll("\\s+", " ").toLowerCase();
+        String key = date + "|" + Math.round(amount * 100) + "|" + normalizedDescription;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            //the first 128 bits of the digest are plenty to tell expenses apart
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            //every Java runtime is required to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
     //getter method for ID
     public int getId() {
         return id.get();
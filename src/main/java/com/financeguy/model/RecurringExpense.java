@@ -0,0 +1,92 @@
+package com.financeguy.model;
+import java.time.LocalDate;
+
+//class that manages a recurring expense rule such as rent or a subscription
+public class RecurringExpense {
+
+    //how often a recurring expense repeats
+    public enum Frequency {
+        DAILY, WEEKLY, MONTHLY, YEARLY;
+
+        //date of the n-th occurrence counted from the start date (the start date itself is occurrence 0).
+        //always measured from the start so a rule starting on the 31st does not drift to the 28th after February
+        public LocalDate occurrence(LocalDate start, long n) {
+            switch (this) {
+                case DAILY:
+                    return start.plusDays(n);
+                case WEEKLY:
+                    return start.plusWeeks(n);
+                case MONTHLY:
+                    return start.plusMonths(n);
+                default:
+                    return start.plusYears(n);
+            }
+        }
+    }
+
+    private final int id;
+    private final String category;
+    private final String description;
+    private final double amount;
+    private final Frequency frequency;
+    private final LocalDate startDate;
+    private final LocalDate endDate; //null when the rule never ends
+    private final int generatedCount; //how many occurrences have already been written as expenses
+
+    //The full constructor that uses database ID
+    public RecurringExpense(int id, String category, String description, double amount, Frequency frequency,
+                            LocalDate startDate, LocalDate endDate, int generatedCount) {
+        this.id = id;
+        this.category = category;
+        this.description = description;
+        this.amount = amount;
+        this.frequency = frequency;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.generatedCount = generatedCount;
+    }
+
+    //constructor when we create a rule before it has an ID
+    public RecurringExpense(String category, String description, double amount, Frequency frequency,
+                            LocalDate startDate, LocalDate endDate) {
+        this(0, category, description, amount, frequency, startDate, endDate, 0);
+    }
+
+    //builds the expense for the n-th occurrence of this rule
+    public Expense toExpense(long occurrence) {
+        return new Expense(category, description, amount, frequency.occurrence(startDate, occurrence));
+    }
+
+    //getter method for ID
+    public int getId() {
+        return id;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public int getGeneratedCount() {
+        return generatedCount;
+    }
+}
@@ -0,0 +1,127 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupManagerTest {
+
+    @TempDir
+    Path backupDirectory;
+
+    private BackupManager backupManager;
+
+    @BeforeEach
+    void emptyDatabase() {
+        DatabaseHelper.initializeDatabase();
+        DatabaseHelper.clearDatabase();
+        backupManager = new BackupManager(backupDirectory, 3);
+    }
+
+    @AfterEach
+    void stop() {
+        backupManager.stop();
+    }
+
+    //waits for the rebuild the restore started and returns how many expenses the statistics count
+    private static long countedExpenses() throws InterruptedException {
+        long counted = -1;
+        for (int attempt = 0; attempt < 100; attempt++) {
+            DatabaseHelper.syncStatistics();
+            counted = 0;
+            for (SpendingSummary summary : DatabaseHelper.getStatistics().getCategories().values()) {
+                counted += summary.getCount();
+            }
+            if (counted == DatabaseHelper.getAllExpenses().size()) {
+                return counted;
+            }
+            Thread.sleep(100);
+        }
+        return counted;
+    }
+
+    @Test
+    void restoreBringsBackTheSnapshot() throws Exception {
+        DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 3, 1)));
+        DatabaseHelper.addExpense(new Expense("Travel", "Taxi", 20, LocalDate.of(2024, 3, 2)));
+        Path snapshot = backupManager.snapshotAsync().get().getFile();
+        DatabaseHelper.addExpense(new Expense("Food", "Dinner", 30, LocalDate.of(2024, 3, 3)));
+
+        backupManager.restoreAsync(snapshot).get();
+
+        assertEquals(2, DatabaseHelper.getAllExpenses().size());
+        assertEquals(2, countedExpenses());
+    }
+
+    //the restored change log is behind what running instances have seen. Its reset must still be newer than
+    //anything they saw, otherwise they keep showing the cleared table
+    @Test
+    void restoreAfterClearIsSeenByRunningInstances() throws Exception {
+        DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 3, 1)));
+        DatabaseHelper.addExpense(new Expense("Travel", "Taxi", 20, LocalDate.of(2024, 3, 2)));
+        Path snapshot = backupManager.snapshotAsync().get().getFile();
+        DatabaseHelper.clearDatabase();
+        DatabaseHelper.getStatistics();
+        long seen = DatabaseHelper.getLatestChangeVersion();
+
+        backupManager.restoreAsync(snapshot).get();
+
+        assertTrue(DatabaseHelper.getLatestChangeVersion() > seen);
+        assertTrue(DatabaseHelper.getChangesSince(seen).isReloadAll());
+        assertEquals(2, countedExpenses());
+
+        //versions keep growing after the reset
+        long restored = DatabaseHelper.getLatestChangeVersion();
+        DatabaseHelper.addExpense(new Expense("Food", "Dinner", 30, LocalDate.of(2024, 3, 3)));
+        assertEquals(restored + 1, DatabaseHelper.getLatestChangeVersion());
+    }
+
+    @Test
+    void keepsOnlyTheNewestSnapshots() throws Exception {
+        DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 3, 1)));
+        Path first = null;
+        for (int i = 0; i < 5; i++) {
+            Path snapshot = backupManager.snapshotAsync().get().getFile();
+            if (first == null) {
+                first = snapshot;
+            }
+        }
+        List<Path> snapshots = backupManager.listSnapshots();
+        assertEquals(3, snapshots.size());
+        assertFalse(snapshots.contains(first));
+    }
+
+    //snapshots of another database kept in the same folder are neither listed nor pruned
+    @Test
+    void leavesSnapshotsOfOtherDatabasesAlone() throws Exception {
+        Path other = Files.createFile(backupDirectory.resolve("other-20240101-000000-000.db"));
+        for (int i = 0; i < 4; i++) {
+            backupManager.snapshotAsync().get();
+        }
+        List<Path> snapshots = backupManager.listSnapshots();
+        assertEquals(3, snapshots.size());
+        assertFalse(snapshots.contains(other));
+        assertTrue(Files.exists(other));
+    }
+
+    @Test
+    void refusesToRestoreAMissingSnapshot() {
+        DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 3, 1)));
+        assertThrows(ExecutionException.class,
+                () -> backupManager.restoreAsync(backupDirectory.resolve("missing.db")).get());
+        assertEquals(1, DatabaseHelper.getAllExpenses().size());
+    }
+}
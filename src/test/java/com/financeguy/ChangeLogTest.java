@@ -0,0 +1,126 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeLogTest {
+
+    @BeforeEach
+    void emptyDatabase() {
+        DatabaseHelper.initializeDatabase();
+        DatabaseHelper.clearDatabase();
+    }
+
+    private static Expense stored(String description) {
+        for (Expense expense : DatabaseHelper.getAllExpenses()) {
+            if (expense.getDescription().equals(description)) {
+                return expense;
+            }
+        }
+        throw new AssertionError("not stored: " + description);
+    }
+
+    @Test
+    void nothingChangedAtTheLatestVersion() {
+        long version = DatabaseHelper.getLatestChangeVersion();
+        ExpenseChanges changes = DatabaseHelper.getChangesSince(version);
+        assertTrue(changes.isEmpty());
+        assertEquals(version, changes.getLatestVersion());
+    }
+
+    //several changes to one expense come back as its current state, once
+    @Test
+    void collapsesChangesToTheSameExpense() {
+        DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 3, 1)));
+        long version = DatabaseHelper.getLatestChangeVersion();
+
+        Expense lunch = stored("Lunch");
+        DatabaseHelper.updateExpense(new Expense(lunch.getId(), "Food", "Lunch", 11, lunch.getDate()));
+        DatabaseHelper.updateExpense(new Expense(lunch.getId(), "Food", "Lunch", 12, lunch.getDate()));
+        DatabaseHelper.addExpense(new Expense("Travel", "Taxi", 20, LocalDate.of(2024, 3, 2)));
+
+        ExpenseChanges changes = DatabaseHelper.getChangesSince(version);
+        assertFalse(changes.isReloadAll());
+        assertEquals(2, changes.getUpserted().size());
+        for (Expense expense : changes.getUpserted()) {
+            if (expense.getId() == lunch.getId()) {
+                assertEquals(12, expense.getAmount());
+            }
+        }
+        assertTrue(changes.getDeletedIds().isEmpty());
+        assertEquals(DatabaseHelper.getLatestChangeVersion(), changes.getLatestVersion());
+    }
+
+    //an expense added and deleted since the version only shows up as deleted
+    @Test
+    void deleteWinsOverEarlierChanges() {
+        long version = DatabaseHelper.getLatestChangeVersion();
+        DatabaseHelper.addExpense(new Expense("Food", "Dinner", 30, LocalDate.of(2024, 3, 1)));
+        Expense dinner = stored("Dinner");
+        DatabaseHelper.updateExpense(new Expense(dinner.getId(), "Food", "Dinner", 35, dinner.getDate()));
+        DatabaseHelper.deleteExpense(dinner.getId());
+
+        ExpenseChanges changes = DatabaseHelper.getChangesSince(version);
+        assertFalse(changes.isReloadAll());
+        assertTrue(changes.getUpserted().isEmpty());
+        assertEquals(Set.of(dinner.getId()), changes.getDeletedIds());
+    }
+
+    @Test
+    void resetMeansReloadEverything() {
+        DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 3, 1)));
+        long version = DatabaseHelper.getLatestChangeVersion();
+        DatabaseHelper.markAllExpensesChanged();
+        DatabaseHelper.addExpense(new Expense("Food", "Coffee", 4, LocalDate.of(2024, 3, 1)));
+
+        ExpenseChanges changes = DatabaseHelper.getChangesSince(version);
+        assertTrue(changes.isReloadAll());
+        assertEquals(DatabaseHelper.getLatestChangeVersion(), changes.getLatestVersion());
+    }
+
+    //a reader that is ahead of the log was looking at another (since restored) database
+    @Test
+    void logBehindTheReaderMeansReloadEverything() {
+        long version = DatabaseHelper.getLatestChangeVersion();
+        assertTrue(DatabaseHelper.getChangesSince(version + 100).isReloadAll());
+    }
+
+    //readers reload everything after that many changes anyway, so a big import is logged as a single reset
+    @Test
+    void bigImportLogsOneReset() {
+        long version = DatabaseHelper.getLatestChangeVersion();
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 10_001; i++) {
+            expenses.add(new Expense("Food", "Row " + i, 1 + i % 50, LocalDate.of(2024, 1, 1).plusDays(i % 300)));
+        }
+        assertEquals(10_001, DatabaseHelper.importExpenses(expenses).getInsertedCount());
+
+        assertEquals(version + 1, DatabaseHelper.getLatestChangeVersion());
+        assertTrue(DatabaseHelper.getChangesSince(version).isReloadAll());
+    }
+
+    @Test
+    void smallImportLogsEveryRow() {
+        long version = DatabaseHelper.getLatestChangeVersion();
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            expenses.add(new Expense("Food", "Row " + i, 1 + i, LocalDate.of(2024, 1, 1)));
+        }
+        DatabaseHelper.importExpenses(expenses);
+
+        ExpenseChanges changes = DatabaseHelper.getChangesSince(version);
+        assertFalse(changes.isReloadAll());
+        assertEquals(5, changes.getUpserted().size());
+        assertEquals(version + 5, changes.getLatestVersion());
+    }
+}
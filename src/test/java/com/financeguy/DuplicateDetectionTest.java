@@ -0,0 +1,100 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateDetectionTest {
+
+    @BeforeEach
+    void emptyDatabase() {
+        DatabaseHelper.initializeDatabase();
+        DatabaseHelper.clearDatabase();
+    }
+
+    @Test
+    void skipsAnExpenseThatIsAlreadyStored() {
+        Expense expense = new Expense("Food", "Lunch", 12.5, LocalDate.of(2024, 3, 1));
+        assertTrue(DatabaseHelper.addExpense(expense));
+        assertFalse(DatabaseHelper.addExpense(new Expense("Food", "  LUNCH ", 12.5, LocalDate.of(2024, 3, 1))));
+        assertEquals(1, DatabaseHelper.getAllExpenses().size());
+    }
+
+    //the user confirmed it really is a second purchase, e.g. two coffees on the same day
+    @Test
+    void addsAConfirmedDuplicate() {
+        Expense coffee = new Expense("Food", "Coffee", 4.5, LocalDate.of(2024, 3, 1));
+        assertFalse(DatabaseHelper.hasIdenticalExpense(coffee));
+        assertTrue(DatabaseHelper.addExpense(coffee));
+        assertTrue(DatabaseHelper.hasIdenticalExpense(coffee));
+        assertFalse(DatabaseHelper.addExpense(coffee));
+        assertTrue(DatabaseHelper.addExpense(coffee, true));
+        assertEquals(2, DatabaseHelper.getAllExpenses().size());
+    }
+
+    @Test
+    void reportsSampleDataThatIsAlreadyLoaded() {
+        assertEquals(3, DatabaseHelper.insertSampleData().getInsertedCount());
+        ImportReport again = DatabaseHelper.insertSampleData();
+        assertEquals(0, again.getInsertedCount());
+        assertEquals(3, again.getSkippedCount());
+        assertEquals(3, DatabaseHelper.getAllExpenses().size());
+    }
+
+    //another instance writes through its own connection, the bloom filter of this one has to catch up before it
+    //answers "not stored"
+    @Test
+    void seesExpensesWrittenByAnotherConnection() throws Exception {
+        assertTrue(DatabaseHelper.addExpense(new Expense("Food", "Lunch", 12.5, LocalDate.of(2024, 3, 1))));
+        Expense external = new Expense("Travel", "Taxi", 30, LocalDate.of(2024, 3, 2));
+        try (Connection conn = DatabaseHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO expenses (category, description, amount, date, fingerprint) VALUES (?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, external.getCategory());
+            pstmt.setString(2, external.getDescription());
+            pstmt.setDouble(3, external.getAmount());
+            pstmt.setString(4, external.getDate().toString());
+            pstmt.setString(5, external.getFingerprint());
+            pstmt.executeUpdate();
+        }
+        assertFalse(DatabaseHelper.addExpense(new Expense("Travel", "Taxi", 30, LocalDate.of(2024, 3, 2))));
+        assertEquals(2, DatabaseHelper.getAllExpenses().size());
+    }
+
+    //a failing row rolls back the whole import, the report must not claim the rows before it
+    @Test
+    void rolledBackImportReportsNothing() throws Exception {
+        try (Connection conn = DatabaseHelper.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TRIGGER fail_import BEFORE INSERT ON expenses WHEN NEW.description = 'Boom'" +
+                    " BEGIN SELECT RAISE(ABORT, 'boom'); END");
+        }
+        try {
+            ImportReport report = DatabaseHelper.importExpenses(List.of(
+                    new Expense("Food", "Lunch", 12.5, LocalDate.of(2024, 3, 1)),
+                    new Expense("Food", "Lunch", 12.5, LocalDate.of(2024, 3, 1)),
+                    new Expense("Food", "Boom", 1, LocalDate.of(2024, 3, 2))));
+            assertEquals(0, report.getInsertedCount());
+            assertEquals(0, report.getSkippedCount());
+            assertFalse(DatabaseHelper.addExpense(new Expense("Food", "Boom", 1, LocalDate.of(2024, 3, 2))));
+        } finally {
+            try (Connection conn = DatabaseHelper.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TRIGGER fail_import");
+            }
+        }
+        assertEquals(0, DatabaseHelper.getAllExpenses().size());
+        //nothing of the failed import is remembered as stored
+        assertTrue(DatabaseHelper.addExpense(new Expense("Food", "Lunch", 12.5, LocalDate.of(2024, 3, 1))));
+    }
+}
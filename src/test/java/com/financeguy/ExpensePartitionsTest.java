@@ -0,0 +1,70 @@
+package com.financeguy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExpensePartitionsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Connection conn;
+
+    //partitions for 2021, 2023 and 2024 next to tables that only look similar
+    @BeforeEach
+    void createPartitions() throws Exception {
+        conn = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("partitions.db"));
+        for (int year : new int[]{2024, 2021, 2023}) {
+            ExpensePartitions.createPartition(conn, year);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE expenses (id INTEGER PRIMARY KEY)");
+            stmt.execute("CREATE TABLE expense_changes (version INTEGER PRIMARY KEY)");
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    void listsOnlyYearPartitionsOldestFirst() throws Exception {
+        assertEquals(List.of(2021, 2023, 2024), ExpensePartitions.listYears(conn));
+    }
+
+    @Test
+    void openRangeKeepsEveryPartition() throws Exception {
+        assertEquals(List.of("expenses_2021", "expenses_2023", "expenses_2024"),
+                ExpensePartitions.tablesBetween(conn, null, null));
+    }
+
+    @Test
+    void prunesPartitionsOutsideTheRange() throws Exception {
+        assertEquals(List.of("expenses_2024"),
+                ExpensePartitions.tablesBetween(conn, LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 30)));
+        assertEquals(List.of("expenses_2023", "expenses_2024"),
+                ExpensePartitions.tablesBetween(conn, LocalDate.of(2022, 12, 31), LocalDate.of(2024, 1, 1)));
+        assertEquals(List.of("expenses_2021"),
+                ExpensePartitions.tablesBetween(conn, null, LocalDate.of(2022, 5, 1)));
+        assertEquals(List.of("expenses_2023", "expenses_2024"),
+                ExpensePartitions.tablesBetween(conn, LocalDate.of(2023, 1, 1), null));
+    }
+
+    @Test
+    void rangeWithoutPartitionsIsEmpty() throws Exception {
+        assertEquals(List.of(), ExpensePartitions.tablesBetween(conn, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31)));
+        assertEquals(List.of(), ExpensePartitions.tablesBetween(conn, LocalDate.of(2030, 1, 1), null));
+    }
+}
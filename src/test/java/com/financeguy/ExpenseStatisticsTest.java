@@ -0,0 +1,212 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class ExpenseStatisticsTest {
+
+    private static final LocalDate END_DATE = LocalDate.of(2024, 12, 31);
+
+    @BeforeEach
+    void emptyDatabase() {
+        DatabaseHelper.initializeDatabase();
+        DatabaseHelper.clearDatabase();
+    }
+
+    //the statistics counted from scratch out of the stored expenses
+    private static ExpenseStatistics rebuilt() {
+        ExpenseStatistics statistics = new ExpenseStatistics();
+        for (Expense expense : DatabaseHelper.getAllExpenses()) {
+            statistics.add(expense);
+        }
+        return statistics;
+    }
+
+    //null if both counted the same expenses, otherwise what differs
+    private static String difference(ExpenseStatistics expected, ExpenseStatistics actual) {
+        Map<String, SpendingSummary> expectedCategories = expected.getCategories();
+        Map<String, SpendingSummary> actualCategories = actual.getCategories();
+        if (!expectedCategories.keySet().equals(actualCategories.keySet())) {
+            return "categories " + expectedCategories.keySet() + " but " + actualCategories.keySet();
+        }
+        for (String category : expectedCategories.keySet()) {
+            String difference = difference(category, expectedCategories.get(category), actualCategories.get(category));
+            if (difference != null) {
+                return difference;
+            }
+        }
+        Set<YearMonth> months = new TreeSet<>();
+        for (Expense expense : DatabaseHelper.getAllExpenses()) {
+            months.add(YearMonth.from(expense.getDate()));
+        }
+        for (YearMonth month : months) {
+            String difference = difference(month.toString(), expected.getMonth(month), actual.getMonth(month));
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    private static String difference(String name, SpendingSummary expected, SpendingSummary actual) {
+        if (expected.getCount() != actual.getCount()) {
+            return name + ": count " + expected.getCount() + " but " + actual.getCount();
+        }
+        if (Math.abs(expected.getMean() - actual.getMean()) > 1e-9 * Math.max(1, Math.abs(expected.getMean()))) {
+            return name + ": mean " + expected.getMean() + " but " + actual.getMean();
+        }
+        if (expected.getMedian() != actual.getMedian()) {
+            return name + ": median " + expected.getMedian() + " but " + actual.getMedian();
+        }
+        return null;
+    }
+
+    //rebuilds run in the background, so this waits until the statistics match a count from scratch. A write that
+    //was counted twice or lost never matches
+    private static void assertEventuallyMatchesRebuild() throws InterruptedException {
+        ExpenseStatistics expected = rebuilt();
+        String difference = null;
+        for (int attempt = 0; attempt < 100; attempt++) {
+            DatabaseHelper.syncStatistics();
+            difference = difference(expected, DatabaseHelper.getStatistics());
+            if (difference == null) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail(difference);
+    }
+
+    //writes a change the way another instance does: the row and a change log entry with its values
+    private static void writeAsOtherInstance(String sql, Object[] row, int id, String op, Object[] values) throws SQLException {
+        try (Connection conn = DatabaseHelper.getConnection()) {
+            conn.setAutoCommit(false);
+            long expenseId = id;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < row.length; i++) {
+                    pstmt.setObject(i + 1, row[i]);
+                }
+                pstmt.executeUpdate();
+            }
+            if (expenseId == 0) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                    expenseId = rs.getLong(1);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO expense_changes " +
+                    "(expense_id, op, category, amount, date, old_category, old_amount, old_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                pstmt.setLong(1, expenseId);
+                pstmt.setString(2, op);
+                for (int i = 0; i < 6; i++) {
+                    pstmt.setObject(i + 3, values == null ? null : values[i]);
+                }
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+        }
+    }
+
+    @Test
+    void ownWritesMatchRebuild() throws InterruptedException {
+        new SampleDataGenerator(1, END_DATE, 2).generate(5_000);
+        DatabaseHelper.getStatistics();
+
+        List<Expense> stored = DatabaseHelper.getAllExpenses();
+        for (int i = 0; i < 50; i++) {
+            Expense expense = stored.get(i);
+            DatabaseHelper.updateExpense(new Expense(expense.getId(), i % 2 == 0 ? "Food" : "Moved", expense.getDescription(),
+                    expense.getAmount() * 3, expense.getDate().minusMonths(5)));
+        }
+        for (int i = 50; i < 100; i++) {
+            DatabaseHelper.deleteExpense(stored.get(i).getId());
+        }
+        new SampleDataGenerator(2, END_DATE, 2).generate(500);
+        DatabaseHelper.materializeRecurringExpenses(END_DATE);
+
+        assertEventuallyMatchesRebuild();
+    }
+
+    @Test
+    void writesOfOtherInstancesAreApplied() throws Exception {
+        new SampleDataGenerator(3, END_DATE, 1).generate(1_000);
+        DatabaseHelper.getStatistics();
+        Expense edited = DatabaseHelper.getAllExpenses().get(0);
+        Expense deleted = DatabaseHelper.getAllExpenses().get(1);
+
+        writeAsOtherInstance("INSERT INTO expenses (category, description, amount, date) VALUES (?, ?, ?, ?)",
+                new Object[]{"gifts", "Present", 80.0, "2024-05-05"}, 0, "upsert",
+                new Object[]{"gifts", 80.0, "2024-05-05", null, null, null});
+        writeAsOtherInstance("UPDATE expenses SET category = ?, amount = ?, date = ? WHERE id = ?",
+                new Object[]{"gifts", 45.5, "2023-02-02", edited.getId()}, edited.getId(), "upsert",
+                new Object[]{"gifts", 45.5, "2023-02-02", edited.getCategory(), edited.getAmount(), edited.getDate().toString()});
+        writeAsOtherInstance("DELETE FROM expenses WHERE id = ?",
+                new Object[]{deleted.getId()}, deleted.getId(), "delete",
+                new Object[]{null, null, null, deleted.getCategory(), deleted.getAmount(), deleted.getDate().toString()});
+
+        DatabaseHelper.syncStatistics();
+        assertEquals(2, DatabaseHelper.getStatistics().getCategory("gifts").getCount());
+        assertEventuallyMatchesRebuild();
+    }
+
+    //entries logged without values (older versions, other tools) cannot be applied one by one
+    @Test
+    void entriesWithoutValuesRebuild() throws Exception {
+        new SampleDataGenerator(4, END_DATE, 1).generate(1_000);
+        DatabaseHelper.getStatistics();
+
+        writeAsOtherInstance("INSERT INTO expenses (category, description, amount, date) VALUES (?, ?, ?, ?)",
+                new Object[]{"gifts", "Present", 80.0, "2024-05-05"}, 0, "upsert", null);
+
+        assertEventuallyMatchesRebuild();
+        assertEquals(1, DatabaseHelper.getStatistics().getCategory("gifts").getCount());
+    }
+
+    //writes that commit while builds read and swap in must be counted exactly once, by a build or afterwards
+    @Test
+    void rebuildsRacingWritesCountEveryWriteOnce() throws Exception {
+        new SampleDataGenerator(5, END_DATE, 2).generate(1_000);
+        DatabaseHelper.getStatistics();
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 1_000; i++) {
+                DatabaseHelper.addExpense(new Expense("Race", "Row " + i, 1 + i % 100, END_DATE.minusDays(i % 400)));
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            DatabaseHelper.rebuildStatistics();
+            Thread.sleep(1);
+        }
+        writer.join();
+
+        assertEventuallyMatchesRebuild();
+        assertEquals(1_000, DatabaseHelper.getStatistics().getCategory("race").getCount());
+    }
+
+    @Test
+    void clearingEmptiesTheStatistics() {
+        new SampleDataGenerator(6, END_DATE, 1).generate(100);
+        assertTrue(DatabaseHelper.getStatistics().getCategories().size() > 0);
+        DatabaseHelper.clearDatabase();
+        assertTrue(DatabaseHelper.getStatistics().getCategories().isEmpty());
+    }
+}
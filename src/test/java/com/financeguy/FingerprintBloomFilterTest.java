@@ -0,0 +1,69 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintBloomFilterTest {
+
+    private static String fingerprint(int i) {
+        return Expense.fingerprint("Expense " + i, i % 500 + 0.99, LocalDate.of(2024, 1, 1).plusDays(i % 366));
+    }
+
+    //a "no" must always be right, or duplicates would be inserted
+    @Test
+    void neverForgetsAnAddedFingerprint() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(fingerprint(i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(fingerprint(i)));
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTarget() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(fingerprint(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 30_000; i++) {
+            if (filter.mightContain(fingerprint(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 20_000 * 0.02, "false positives: " + falsePositives);
+    }
+
+    //short strings are not hex digests and go through the fallback hashes
+    @Test
+    void worksForStringsThatAreNotFingerprints() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(100, 0.01);
+        filter.add("abc");
+        assertTrue(filter.mightContain("abc"));
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 20, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void saturatesOncePastCapacity() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(100, 0.01);
+        for (int i = 0; i < 100; i++) {
+            filter.add(fingerprint(i));
+        }
+        assertFalse(filter.isSaturated());
+        filter.add(fingerprint(100));
+        assertTrue(filter.isSaturated());
+    }
+}
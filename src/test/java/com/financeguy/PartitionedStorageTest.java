@@ -0,0 +1,207 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PartitionedStorageTest {
+
+    //once partitioned a database stays that way, so every test starts from a new file and the last one is removed
+    //again for the other tests, which expect the single table
+    @BeforeAll
+    static void onlyOnTheTestDatabase() {
+        //never delete the real database when run without the surefire configuration
+        assumeTrue(System.getProperty("financeguy.db") != null);
+    }
+
+    @BeforeEach
+    void newDatabase() throws Exception {
+        deleteDatabase();
+        DatabaseHelper.initializeDatabase();
+    }
+
+    @AfterAll
+    static void removeDatabase() throws Exception {
+        deleteDatabase();
+        DatabaseHelper.initializeDatabase();
+    }
+
+    private static void deleteDatabase() throws Exception {
+        String db = System.getProperty("financeguy.db");
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Path.of(db + suffix));
+        }
+    }
+
+    private static Expense stored(String description) {
+        for (Expense expense : DatabaseHelper.getAllExpenses()) {
+            if (expense.getDescription().equals(description)) {
+                return expense;
+            }
+        }
+        throw new AssertionError("not stored: " + description);
+    }
+
+    private static Set<String> descriptions(List<Expense> expenses) {
+        Set<String> descriptions = new TreeSet<>();
+        for (Expense expense : expenses) {
+            descriptions.add(expense.getDescription());
+        }
+        return descriptions;
+    }
+
+    private static List<Integer> partitionYears() throws Exception {
+        try (Connection conn = DatabaseHelper.getConnection()) {
+            return ExpensePartitions.listYears(conn);
+        }
+    }
+
+    private static int rowsIn(String table) throws Exception {
+        try (Connection conn = DatabaseHelper.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.getInt(1);
+        }
+    }
+
+    private static void addAll(Expense... expenses) {
+        for (Expense expense : expenses) {
+            assertTrue(DatabaseHelper.addExpense(expense));
+        }
+    }
+
+    @Test
+    void migrationKeepsEveryExpenseAndItsId() throws Exception {
+        addAll(new Expense("Food", "Lunch", 10, LocalDate.of(2022, 5, 1)),
+                new Expense("Travel", "Train", 40, LocalDate.of(2023, 7, 2)),
+                new Expense("Food", "Dinner", 30, LocalDate.of(2024, 1, 3)),
+                new Expense("Food", "Snack", 3, LocalDate.of(2024, 2, 4)));
+        List<Expense> before = DatabaseHelper.getAllExpenses();
+        //the highest id was handed out once, it must not come back after the switch
+        int snackId = stored("Snack").getId();
+        DatabaseHelper.deleteExpense(snackId);
+        long version = DatabaseHelper.getLatestChangeVersion();
+
+        assertTrue(DatabaseHelper.enablePartitionedStorage());
+
+        assertTrue(DatabaseHelper.isPartitioned());
+        assertEquals(List.of(2022, 2023, 2024), partitionYears());
+        assertEquals(0, rowsIn("expenses"));
+        for (Expense expense : before) {
+            if (!expense.getDescription().equals("Snack")) {
+                assertEquals(expense.getId(), stored(expense.getDescription()).getId());
+            }
+        }
+        assertTrue(DatabaseHelper.getChangesSince(version).isReloadAll());
+
+        addAll(new Expense("Food", "Breakfast", 8, LocalDate.of(2024, 3, 1)));
+        assertEquals(snackId + 1, stored("Breakfast").getId());
+    }
+
+    //a second switch must not move the (now empty) single table again and reset the id counter
+    @Test
+    void switchingTwiceKeepsTheIdCounter() {
+        addAll(new Expense("Food", "Lunch", 10, LocalDate.of(2022, 5, 1)));
+        assertTrue(DatabaseHelper.enablePartitionedStorage());
+        addAll(new Expense("Food", "Dinner", 30, LocalDate.of(2022, 5, 2)));
+        assertTrue(DatabaseHelper.enablePartitionedStorage());
+
+        addAll(new Expense("Food", "Snack", 3, LocalDate.of(2022, 5, 3)));
+        assertEquals(3, DatabaseHelper.getAllExpenses().size());
+        assertEquals(stored("Dinner").getId() + 1, stored("Snack").getId());
+    }
+
+    @Test
+    void updateToAnotherYearMovesTheRow() throws Exception {
+        DatabaseHelper.enablePartitionedStorage();
+        addAll(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 5, 1)));
+        Expense lunch = stored("Lunch");
+
+        DatabaseHelper.updateExpense(new Expense(lunch.getId(), "Food", "Lunch", 12, LocalDate.of(2021, 5, 1)));
+
+        assertEquals(0, rowsIn("expenses_2024"));
+        assertEquals(1, rowsIn("expenses_2021"));
+        Expense moved = stored("Lunch");
+        assertEquals(lunch.getId(), moved.getId());
+        assertEquals(LocalDate.of(2021, 5, 1), moved.getDate());
+        assertEquals(12, moved.getAmount());
+        assertEquals(1, DatabaseHelper.getAllExpenses().size());
+    }
+
+    @Test
+    void deleteRemovesTheRowFromItsYear() throws Exception {
+        DatabaseHelper.enablePartitionedStorage();
+        addAll(new Expense("Food", "Lunch", 10, LocalDate.of(2023, 5, 1)),
+                new Expense("Food", "Dinner", 30, LocalDate.of(2024, 5, 1)));
+
+        DatabaseHelper.deleteExpense(stored("Lunch").getId());
+
+        assertEquals(0, rowsIn("expenses_2023"));
+        assertEquals(1, rowsIn("expenses_2024"));
+        assertEquals(Set.of("Dinner"), descriptions(DatabaseHelper.getAllExpenses()));
+    }
+
+    //queries spanning several years read each partition and merge what they return
+    @Test
+    void queriesMergeEveryYearInTheRange() {
+        DatabaseHelper.enablePartitionedStorage();
+        addAll(new Expense("Food", "Lunch 2022", 10, LocalDate.of(2022, 3, 1)),
+                new Expense("Food", "Lunch 2023", 20, LocalDate.of(2023, 3, 1)),
+                new Expense("Travel", "Train 2023", 40, LocalDate.of(2023, 9, 1)),
+                new Expense("Food", "Lunch 2024", 30, LocalDate.of(2024, 3, 1)),
+                new Expense("Travel", "Train 2024", 50, LocalDate.of(2024, 9, 1)));
+
+        assertEquals(5, DatabaseHelper.getAllExpenses().size());
+        assertEquals(Set.of("Lunch 2023", "Train 2023", "Lunch 2024"),
+                descriptions(DatabaseHelper.getExpenses(null, LocalDate.of(2022, 6, 1), LocalDate.of(2024, 6, 1))));
+        assertEquals(Set.of("Lunch 2022", "Lunch 2023", "Lunch 2024"),
+                descriptions(DatabaseHelper.getExpenses("food", null, null)));
+
+        Map<String, Double> totals = DatabaseHelper.getCategoryTotals(null, null);
+        assertEquals(60, totals.get("food"), 1e-9);
+        assertEquals(90, totals.get("travel"), 1e-9);
+        Map<String, Double> since2023 = DatabaseHelper.getCategoryTotals(LocalDate.of(2023, 1, 1), null);
+        assertEquals(50, since2023.get("food"), 1e-9);
+        assertEquals(90, since2023.get("travel"), 1e-9);
+    }
+
+    //every year has its own fingerprint index, a duplicate is looked up in the partition of its date
+    @Test
+    void duplicatesAreFoundInTheirYear() {
+        DatabaseHelper.enablePartitionedStorage();
+        addAll(new Expense("Food", "Lunch", 10, LocalDate.of(2023, 5, 1)));
+
+        assertFalse(DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2023, 5, 1))));
+        assertTrue(DatabaseHelper.addExpense(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 5, 1))));
+
+        List<Expense> imported = new ArrayList<>();
+        imported.add(new Expense("Food", "Lunch", 10, LocalDate.of(2023, 5, 1)));
+        imported.add(new Expense("Food", "Lunch", 10, LocalDate.of(2024, 5, 1)));
+        imported.add(new Expense("Food", "Lunch", 10, LocalDate.of(2025, 5, 1)));
+        imported.add(new Expense("Food", "Lunch", 10, LocalDate.of(2025, 5, 1)));
+        ImportReport report = DatabaseHelper.importExpenses(imported);
+        assertEquals(1, report.getInsertedCount());
+        assertEquals(3, report.getSkippedCount());
+        assertEquals(3, DatabaseHelper.getAllExpenses().size());
+        assertEquals(1, DatabaseHelper.getExpenses(null, LocalDate.of(2025, 1, 1), null).size());
+    }
+}
@@ -0,0 +1,101 @@
+package com.financeguy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+
+    //log-normal amounts like real expenses, from cents to thousands
+    private static List<Double> amounts(long seed, int count) {
+        Random random = new Random(seed);
+        List<Double> amounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            amounts.add(Math.round(40 * Math.exp(1.2 * random.nextGaussian()) * 100) / 100.0);
+        }
+        return amounts;
+    }
+
+    private static QuantileSketch sketchOf(List<Double> amounts) {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (double amount : amounts) {
+            sketch.add(amount);
+        }
+        return sketch;
+    }
+
+    @Test
+    void quantilesAreWithinOnePercent() {
+        List<Double> amounts = amounts(1, 100_000);
+        QuantileSketch sketch = sketchOf(amounts);
+        List<Double> sorted = new ArrayList<>(amounts);
+        Collections.sort(sorted);
+        for (double q : QUANTILES) {
+            double exact = sorted.get((int) Math.floor(q * (sorted.size() - 1)));
+            double estimate = sketch.quantile(q);
+            assertTrue(Math.abs(estimate - exact) <= 0.01 * exact + 1e-9,
+                    "q=" + q + " exact " + exact + " estimate " + estimate);
+        }
+        assertEquals(100_000, sketch.getCount());
+    }
+
+    //taking amounts out leaves the same sketch as never adding them
+    @Test
+    void removeUndoesAdd() {
+        List<Double> kept = amounts(2, 5_000);
+        List<Double> removed = amounts(3, 5_000);
+        QuantileSketch sketch = sketchOf(kept);
+        for (double amount : removed) {
+            sketch.add(amount);
+        }
+        for (double amount : removed) {
+            sketch.remove(amount);
+        }
+        QuantileSketch expected = sketchOf(kept);
+        assertEquals(expected.getCount(), sketch.getCount());
+        for (double q : QUANTILES) {
+            assertEquals(expected.quantile(q), sketch.quantile(q));
+        }
+    }
+
+    @Test
+    void mergeEqualsOneSketchOfBoth() {
+        List<Double> first = amounts(4, 5_000);
+        List<Double> second = amounts(5, 3_000);
+        QuantileSketch merged = sketchOf(first);
+        merged.merge(sketchOf(second));
+        List<Double> both = new ArrayList<>(first);
+        both.addAll(second);
+        QuantileSketch expected = sketchOf(both);
+        assertEquals(expected.getCount(), merged.getCount());
+        for (double q : QUANTILES) {
+            assertEquals(expected.quantile(q), merged.quantile(q));
+        }
+    }
+
+    @Test
+    void zeroAmountsAreReportedAsZero() {
+        QuantileSketch sketch = sketchOf(List.of(0.0, 0.0, 0.0, 10.0));
+        assertEquals(0, sketch.quantile(0.5));
+        assertEquals(10, sketch.quantile(1), 0.1);
+    }
+
+    @Test
+    void emptySketchHasNoQuantiles() {
+        assertTrue(Double.isNaN(new QuantileSketch(0.01).quantile(0.5)));
+    }
+
+    @Test
+    void refusesToMergeDifferentAccuracy() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)));
+    }
+}
@@ -0,0 +1,135 @@
+package com.financeguy;
+
+import com.financeguy.model.Expense;
+import com.financeguy.model.RecurringExpense;
+import com.financeguy.model.RecurringExpense.Frequency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecurringExpenseTest {
+
+    @BeforeEach
+    void emptyDatabase() {
+        DatabaseHelper.initializeDatabase();
+        DatabaseHelper.clearDatabase();
+    }
+
+    //dates of the stored expenses with the given description, oldest first
+    private static List<LocalDate> datesOf(String description) {
+        List<LocalDate> dates = new ArrayList<>();
+        for (Expense expense : DatabaseHelper.getAllExpenses()) {
+            if (expense.getDescription().equals(description)) {
+                dates.add(expense.getDate());
+            }
+        }
+        dates.sort(null);
+        return dates;
+    }
+
+    private static int generatedCount(String description) {
+        for (RecurringExpense rule : DatabaseHelper.getAllRecurringExpenses()) {
+            if (rule.getDescription().equals(description)) {
+                return rule.getGeneratedCount();
+            }
+        }
+        throw new AssertionError("no rule: " + description);
+    }
+
+    //every occurrence is counted from the start date, so the 31st comes back after the short months
+    @Test
+    void monthlyRuleOnThe31stDoesNotDrift() {
+        DatabaseHelper.addRecurringExpense(new RecurringExpense("Housing", "Rent", 900, Frequency.MONTHLY,
+                LocalDate.of(2024, 1, 31), null));
+
+        DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 6, 30));
+
+        assertEquals(List.of(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 2, 29), LocalDate.of(2024, 3, 31),
+                LocalDate.of(2024, 4, 30), LocalDate.of(2024, 5, 31), LocalDate.of(2024, 6, 30)), datesOf("Rent"));
+        assertEquals(6, generatedCount("Rent"));
+    }
+
+    @Test
+    void stopsAtTheEndDate() {
+        DatabaseHelper.addRecurringExpense(new RecurringExpense("Sport", "Gym", 10, Frequency.WEEKLY,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 20)));
+
+        DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 3, 1));
+
+        assertEquals(List.of(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 8), LocalDate.of(2024, 1, 15)),
+                datesOf("Gym"));
+    }
+
+    //generated_count remembers what was written, so running again only adds the periods that came due since
+    @Test
+    void repeatedRunsOnlyAddNewOccurrences() {
+        DatabaseHelper.addRecurringExpense(new RecurringExpense("Food", "Milk", 2, Frequency.DAILY,
+                LocalDate.of(2024, 1, 1), null));
+
+        assertEquals(10, DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 1, 10)).getInsertedCount());
+        ImportReport again = DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 1, 10));
+        assertEquals(0, again.getInsertedCount());
+        assertEquals(0, again.getSkippedCount());
+        assertEquals(5, DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 1, 15)).getInsertedCount());
+
+        assertEquals(15, datesOf("Milk").size());
+        assertEquals(15, generatedCount("Milk"));
+    }
+
+    //all rules are written in one transaction: one failing occurrence leaves neither expenses nor bookkeeping behind
+    @Test
+    void failureRollsBackEveryRule() throws Exception {
+        DatabaseHelper.addRecurringExpense(new RecurringExpense("Housing", "Rent", 900, Frequency.MONTHLY,
+                LocalDate.of(2024, 1, 1), null));
+        DatabaseHelper.addRecurringExpense(new RecurringExpense("Other", "Boom", 1, Frequency.MONTHLY,
+                LocalDate.of(2024, 1, 1), null));
+        try (Connection conn = DatabaseHelper.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TRIGGER fail_recurring BEFORE INSERT ON expenses WHEN NEW.description = 'Boom'" +
+                    " BEGIN SELECT RAISE(ABORT, 'boom'); END");
+        }
+        try {
+            ImportReport report = DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 3, 31));
+            assertEquals(0, report.getInsertedCount());
+            assertEquals(0, DatabaseHelper.getAllExpenses().size());
+            assertEquals(0, generatedCount("Rent"));
+            assertEquals(0, generatedCount("Boom"));
+        } finally {
+            try (Connection conn = DatabaseHelper.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TRIGGER fail_recurring");
+            }
+        }
+
+        //nothing was lost, the next run writes every occurrence
+        assertEquals(6, DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 3, 31)).getInsertedCount());
+        assertEquals(3, generatedCount("Rent"));
+        assertEquals(3, generatedCount("Boom"));
+    }
+
+    //an occurrence already entered by hand is skipped as a duplicate but still counts as generated, so it is not
+    //offered again on the next run
+    @Test
+    void occurrenceEnteredByHandIsSkipped() {
+        DatabaseHelper.addExpense(new Expense("Housing", "Rent", 900, LocalDate.of(2024, 2, 1)));
+        DatabaseHelper.addRecurringExpense(new RecurringExpense("Housing", "Rent", 900, Frequency.MONTHLY,
+                LocalDate.of(2024, 1, 1), null));
+
+        ImportReport report = DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 3, 31));
+
+        assertEquals(2, report.getInsertedCount());
+        assertEquals(1, report.getSkippedCount());
+        assertEquals(LocalDate.of(2024, 2, 1), report.getSkippedDuplicates().get(0).getDate());
+        assertEquals(List.of(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 1)),
+                datesOf("Rent"));
+        assertEquals(3, generatedCount("Rent"));
+        assertEquals(0, DatabaseHelper.materializeRecurringExpenses(LocalDate.of(2024, 3, 31)).getSkippedCount());
+    }
+}
@@ -0,0 +1,92 @@
+package com.financeguy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpendingSummaryTest {
+
+    private static List<Double> amounts(long seed, int count) {
+        Random random = new Random(seed);
+        List<Double> amounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            amounts.add(Math.round(25 * Math.exp(0.8 * random.nextGaussian()) * 100) / 100.0);
+        }
+        return amounts;
+    }
+
+    private static SpendingSummary summaryOf(List<Double> amounts) {
+        SpendingSummary summary = new SpendingSummary();
+        for (double amount : amounts) {
+            summary.add(amount);
+        }
+        return summary;
+    }
+
+    //mean and sample variance the textbook way, two passes over the amounts
+    private static void assertMatches(List<Double> amounts, SpendingSummary summary) {
+        double mean = 0;
+        for (double amount : amounts) {
+            mean += amount;
+        }
+        mean /= amounts.size();
+        double squares = 0;
+        for (double amount : amounts) {
+            squares += (amount - mean) * (amount - mean);
+        }
+        double variance = amounts.size() > 1 ? squares / (amounts.size() - 1) : 0;
+
+        assertEquals(amounts.size(), summary.getCount());
+        assertEquals(mean, summary.getMean(), 1e-9 * mean);
+        assertEquals(mean * amounts.size(), summary.getTotal(), 1e-6);
+        assertEquals(variance, summary.getVariance(), 1e-6 * variance);
+    }
+
+    @Test
+    void matchesExactMeanAndVariance() {
+        List<Double> amounts = amounts(1, 50_000);
+        assertMatches(amounts, summaryOf(amounts));
+    }
+
+    @Test
+    void removeUndoesAdd() {
+        List<Double> kept = amounts(2, 2_000);
+        List<Double> removed = amounts(3, 1_000);
+        SpendingSummary summary = summaryOf(kept);
+        for (double amount : removed) {
+            summary.add(amount);
+        }
+        for (double amount : removed) {
+            summary.remove(amount);
+        }
+        assertMatches(kept, summary);
+        assertEquals(summaryOf(kept).getMedian(), summary.getMedian());
+    }
+
+    @Test
+    void removingEverythingLeavesAnEmptySummary() {
+        SpendingSummary summary = summaryOf(List.of(10.0, 20.0));
+        summary.remove(20.0);
+        summary.remove(10.0);
+        assertEquals(0, summary.getCount());
+        assertEquals(0, summary.getMean());
+        assertEquals(0, summary.getVariance());
+    }
+
+    @Test
+    void mergeEqualsOneSummaryOfBoth() {
+        List<Double> first = amounts(4, 3_000);
+        List<Double> second = amounts(5, 7_000);
+        SpendingSummary merged = summaryOf(first);
+        merged.merge(summaryOf(second));
+        merged.merge(new SpendingSummary());
+        List<Double> both = new ArrayList<>(first);
+        both.addAll(second);
+        assertMatches(both, merged);
+        assertEquals(summaryOf(both).getQuantile(0.9), merged.getQuantile(0.9));
+    }
+}
@@ -0,0 +1,187 @@
+package com.financeguy;
+
+import com.financeguy.controller.MainViewController;
+import com.financeguy.model.Expense;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the main view's actions (filter, add, delete) block the FX thread on a large database.
+ * Runs headless with Monocle, see the ui-harness profile in pom.xml:
+ *   mvn -Pui-harness test-compile exec:exec -Dharness.rows=1000000
+ * The database defaults to target/ui-harness.db and is filled by SampleDataGenerator on first use.
+ * For every action it reports how long the action itself held the FX thread and the longest gap between two
+ * rendered frames while it ran (which also includes the layout and CSS work the action caused).
+ */
+public class UiResponsivenessHarness {
+
+    //how long to keep watching frames after an action returned, so the layout pass it caused is counted
+    private static final long SETTLE_MILLIS = 200;
+
+    //timings of one kind of action
+    private static class ActionStats {
+        final List<Long> actionNanos = new ArrayList<>();
+        final List<Long> frameGapNanos = new ArrayList<>();
+    }
+
+    //records the longest gap between two frames since it was last reset
+    private static class FrameMonitor extends AnimationTimer {
+        private long lastFrame;
+        private volatile long longestGap;
+
+        @Override
+        public void handle(long now) {
+            if (lastFrame != 0) {
+                longestGap = Math.max(longestGap, now - lastFrame);
+            }
+            lastFrame = now;
+        }
+
+        //called on the FX thread
+        void reset() {
+            lastFrame = System.nanoTime();
+            longestGap = 0;
+        }
+    }
+
+    private final Map<String, ActionStats> results = new LinkedHashMap<>();
+    private final FrameMonitor frameMonitor = new FrameMonitor();
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        //headless rendering unless the caller chose something else. Has to happen before the toolkit starts
+        setIfAbsent("glass.platform", "Monocle");
+        setIfAbsent("monocle.platform", "Headless");
+        setIfAbsent("prism.order", "sw");
+        setIfAbsent("financeguy.db", "target/ui-harness.db");
+
+        DatabaseHelper.initializeDatabase();
+        if (DatabaseHelper.getCategoryTotals(null, null).isEmpty()) {
+            System.out.printf("Generating %,d expenses...%n", rows);
+            ImportReport report = new SampleDataGenerator(42, SampleDataGenerator.DEFAULT_END_DATE, 10).generate(rows);
+            System.out.println(report.summary(0));
+        }
+
+        Platform.startup(() -> { });
+        try {
+            new UiResponsivenessHarness().run(runs);
+        } finally {
+            Platform.exit();
+        }
+        System.exit(0);
+    }
+
+    private void run(int runs) throws Exception {
+        //loading the view also loads every expense, so it is measured like any other action
+        Stage[] stage = new Stage[1];
+        MainViewController controller = measure("open main view", () -> {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/MainView.fxml"));
+            stage[0] = new Stage();
+            stage[0].setScene(new Scene(loader.load(), 1200, 800));
+            stage[0].show();
+            frameMonitor.start();
+            return loader.getController();
+        });
+
+        List<String> categories = new ArrayList<>(DatabaseHelper.getCategoryTotals(null, null).keySet());
+        LocalDate month = LocalDate.of(2024, 6, 1);
+        for (int i = 0; i < runs; i++) {
+            String category = categories.get(i % categories.size());
+            measure("filter by category", () -> {
+                controller.applyFilter(category, null, null);
+                return null;
+            });
+            LocalDate start = month.minusMonths(i);
+            measure("filter by month", () -> {
+                controller.applyFilter(null, start, start.plusMonths(1).minusDays(1));
+                return null;
+            });
+            measure("clear filter", () -> {
+                controller.applyFilter(null, null, null);
+                return null;
+            });
+
+            Expense expense = new Expense("harness", "Harness expense " + System.nanoTime(), 1.23, LocalDate.now());
+            measure("add expense", () -> controller.addExpense(expense));
+            //find the stored copy so it is deleted by its real id
+            Expense stored = DatabaseHelper.getExpenses("harness", LocalDate.now(), LocalDate.now()).get(0);
+            measure("delete expense", () -> {
+                controller.deleteExpense(stored);
+                return null;
+            });
+        }
+
+        printResults();
+    }
+
+    //runs the action on the FX thread and records how long it took and the longest frame gap around it
+    private <T> T measure(String name, Callable<T> action) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long[] actionNanos = new long[1];
+        Platform.runLater(() -> {
+            frameMonitor.reset();
+            long start = System.nanoTime();
+            try {
+                T value = action.call();
+                //written before completing, completing the future is what makes it visible to the waiting thread
+                actionNanos[0] = System.nanoTime() - start;
+                result.complete(value);
+            } catch (Throwable t) {
+                //errors too, otherwise a broken toolkit leaves the harness waiting for the timeout
+                result.completeExceptionally(t);
+            }
+        });
+        T value = result.get(10, TimeUnit.MINUTES);
+        //let the frames after the action render before reading the gap
+        Thread.sleep(SETTLE_MILLIS);
+        CompletableFuture<Long> gap = new CompletableFuture<>();
+        Platform.runLater(() -> gap.complete(frameMonitor.longestGap));
+
+        ActionStats stats = results.computeIfAbsent(name, key -> new ActionStats());
+        stats.actionNanos.add(actionNanos[0]);
+        stats.frameGapNanos.add(Math.max(gap.get(), actionNanos[0]));
+        return value;
+    }
+
+    private void printResults() {
+        System.out.println();
+        System.out.printf("%-20s %5s %12s %12s %16s%n", "action", "runs", "median ms", "max ms", "worst frame ms");
+        for (Map.Entry<String, ActionStats> entry : results.entrySet()) {
+            ActionStats stats = entry.getValue();
+            System.out.printf("%-20s %5d %12.1f %12.1f %16.1f%n", entry.getKey(), stats.actionNanos.size(),
+                    millis(median(stats.actionNanos)), millis(Collections.max(stats.actionNanos)),
+                    millis(Collections.max(stats.frameGapNanos)));
+        }
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}